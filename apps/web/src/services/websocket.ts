@@ -88,13 +88,25 @@ export interface OfflineMessage {
   message?: Message
 }
 
+interface TypingState {
+  conversationId: number
+  userId: number
+  typing: boolean
+}
+
+interface TypingNotifyData {
+  states?: TypingState[]
+  conversationId?: number
+  userId?: number
+}
+
 export interface WebSocketEventHandlers {
   onConnected?: () => void
   onDisconnected?: () => void
   onReconnecting?: (attempt: number) => void
   onMessage?: (message: Message) => void
   onMessageAck?: (msgId: string, serverTimestamp: number, success: boolean) => void
-  onTyping?: (conversationId: number, userId: number) => void
+  onTyping?: (conversationId: number, userId: number, typing?: boolean) => void
   onRecall?: (msgId: string) => void
   onReadSync?: (conversationId: number, lastReadMsgId: number) => void
   onOnlineStatusChange?: (userId: number, isOnline: boolean) => void
@@ -323,7 +335,7 @@ class WebSocketService {
           break
 
         case ProtocolType.TYPING_NOTIFY:
-          this.handleTypingNotify(packet.data as { conversationId: number; userId: number })
+          this.handleTypingNotify(packet.data as TypingNotifyData)
           break
 
         case ProtocolType.RECALL_NOTIFY:
@@ -385,8 +397,15 @@ class WebSocketService {
     this.handlers.onMessageAck?.(data.clientMsgId, data.serverTimestamp, data.success)
   }
 
-  private handleTypingNotify(data: { conversationId: number; userId: number }): void {
-    this.handlers.onTyping?.(data.conversationId, data.userId)
+  private handleTypingNotify(data: TypingNotifyData): void {
+    // The server batches every typing state for this client into one frame
+    if (data.states) {
+      for (const state of data.states) {
+        this.handlers.onTyping?.(state.conversationId, state.userId, state.typing)
+      }
+      return
+    }
+    this.handlers.onTyping?.(data.conversationId!, data.userId!)
   }
 
   private handleRecallNotify(data: { msgId: string }): void {
@@ -518,8 +537,8 @@ class WebSocketService {
     return this.send(ProtocolType.CHAT_MESSAGE, data)
   }
 
-  sendTyping(conversationId: number): Promise<void> {
-    return this.send(ProtocolType.TYPING, { conversationId })
+  sendTyping(conversationId: number, typing = true): Promise<void> {
+    return this.send(ProtocolType.TYPING, typing ? { conversationId } : { conversationId, typing })
   }
 
   sendReadAck(conversationId: number, lastReadMsgId: number): Promise<void> {
@@ -222,6 +222,17 @@ describe('WebSocket Store', () => {
     })
   })
 
+  describe('sendTypingStopped', () => {
+    it('should send typing stopped when connected', async () => {
+      wsStore.status = 'connected'
+      vi.mocked(websocketService.sendTyping).mockResolvedValue(undefined)
+
+      await wsStore.sendTypingStopped(1)
+
+      expect(websocketService.sendTyping).toHaveBeenCalledWith(1, false)
+    })
+  })
+
   describe('sendReadAck', () => {
     it('should send read ack when connected', async () => {
       wsStore.status = 'connected'
@@ -315,6 +326,14 @@ describe('WebSocket Store', () => {
       expect(handleTypingSpy).toHaveBeenCalledWith(1, 2)
     })
 
+    it('should handle onTyping stopped and remove the typing user', () => {
+      const removeTypingSpy = vi.spyOn(chatStore, 'removeTypingUser')
+
+      capturedHandlers.onTyping?.(1, 2, false)
+
+      expect(removeTypingSpy).toHaveBeenCalledWith(1, 2)
+    })
+
     it('should handle onRecall and forward to chat store', () => {
       const handleRecallSpy = vi.spyOn(chatStore, 'handleMessageRecalled')
 
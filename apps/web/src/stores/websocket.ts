@@ -92,9 +92,13 @@ export const useWebSocketStore = defineStore('websocket', {
           // Message status is already handled in chat store
         },
 
-        onTyping: (conversationId, userId) => {
+        onTyping: (conversationId, userId, typing = true) => {
           const chatStore = useChatStore()
-          chatStore.handleTypingIndicator(conversationId, userId)
+          if (typing) {
+            chatStore.handleTypingIndicator(conversationId, userId)
+          } else {
+            chatStore.removeTypingUser(conversationId, userId)
+          }
         },
 
         onRecall: (msgId) => {
@@ -187,6 +191,15 @@ export const useWebSocketStore = defineStore('websocket', {
       }
     },
 
+    async sendTypingStopped(conversationId: number) {
+      if (this.status !== 'connected') return
+      try {
+        await websocketService.sendTyping(conversationId, false)
+      } catch (error) {
+        console.warn('[WebSocket Store] Failed to send typing stopped:', error)
+      }
+    },
+
     async sendReadAck(conversationId: number, lastReadMsgId: number) {
       if (this.status !== 'connected') return
       try {
@@ -47,6 +47,9 @@ dependencies {
     // MinIO S3 client
     implementation("io.minio:minio:8.5.14")
 
+    // In-process caching
+    implementation("com.github.ben-manes.caffeine:caffeine")
+
     // Utilities
     compileOnly("org.projectlombok:lombok")
     annotationProcessor("org.projectlombok:lombok")
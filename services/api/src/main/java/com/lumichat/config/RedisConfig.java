@@ -0,0 +1,51 @@
+package com.lumichat.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumichat.service.MessageContextCache;
+import com.lumichat.service.ParticipantChangePublisher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Redis subscriptions of the API.
+ * Participant changes made on any API instance are announced on {@code im:participants};
+ * every instance listens there so its {@link MessageContextCache} never authorizes
+ * a removed member for longer than the pub/sub delivery delay.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class RedisConfig {
+
+    private final MessageContextCache messageContextCache;
+    private final ObjectMapper objectMapper;
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(participantsListener(),
+                new ChannelTopic(ParticipantChangePublisher.REDIS_CHANNEL_PARTICIPANTS));
+        return container;
+    }
+
+    private MessageListener participantsListener() {
+        return (message, pattern) -> {
+            try {
+                JsonNode event = objectMapper.readTree(message.getBody());
+                if (event.hasNonNull("conversationId")) {
+                    messageContextCache.evictConversation(event.get("conversationId").asLong());
+                }
+            } catch (Exception e) {
+                log.error("Error processing participants change: {}", e.getMessage());
+            }
+        };
+    }
+}
@@ -60,8 +60,8 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.GET, "/files/{id}", "/files/{id}/download", "/files/{id}/info").permitAll()
                 // Internal service endpoints (authenticated via InternalServiceFilter)
                 .requestMatchers("/internal/**").permitAll()
-                // Sync queue endpoint is called by IM server with internal service auth
-                .requestMatchers("/sync/queue").permitAll()
+                // Sync queue endpoints are called by IM server with internal service auth
+                .requestMatchers("/sync/queue", "/sync/queue/batch").permitAll()
                 .anyRequest().authenticated()
             )
             .addFilterBefore(rateLimitFilter, UsernamePasswordAuthenticationFilter.class)
@@ -6,6 +6,7 @@ import com.lumichat.dto.response.MessageResponse;
 import com.lumichat.entity.Conversation;
 import com.lumichat.repository.ConversationRepository;
 import com.lumichat.security.InternalServiceFilter.InternalServicePrincipal;
+import com.lumichat.service.MessageGroupCommitter;
 import com.lumichat.service.MessageService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -32,6 +33,7 @@ import java.util.Map;
 public class InternalApiController {
 
     private final MessageService messageService;
+    private final MessageGroupCommitter messageGroupCommitter;
     private final ConversationService conversationService;
     private final ConversationRepository conversationRepository;
 
@@ -51,10 +53,13 @@ public class InternalApiController {
         log.info("Internal message persist request from {} for user {}",
                 principal.serviceName(), principal.userId());
 
-        MessageResponse message = messageService.sendMessage(
+        // The API publishes the fan-out event; the IM server only sends the ACK,
+        // so this returns only once the message (or its group commit) is durable
+        MessageResponse message = messageGroupCommitter.send(
                 principal.userId(),
                 principal.deviceId(),
-                request
+                request,
+                MessageService.Origin.websocket
         );
 
         return ApiResponse.success(message);
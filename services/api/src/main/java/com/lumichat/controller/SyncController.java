@@ -45,6 +45,26 @@ public class SyncController {
                 messages.size() < totalPending));
     }
 
+    /**
+     * Get everything after a cursor across the user's conversations
+     * Replaces per-recipient offline queue rows with a keyset scan over messages.
+     * Without {@code after} the device's last synced message id is used.
+     * The client acknowledges with POST /sync/ack and {@code lastMessageId = nextCursor}.
+     * GET /sync/inbox
+     */
+    @GetMapping("/inbox")
+    public ApiResponse<OfflineMessageService.InboxPage> getInbox(
+            @AuthenticationPrincipal UserPrincipal principal,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+
+        return ApiResponse.success(offlineMessageService.getInbox(
+                principal.getId(),
+                principal.getDeviceId(),
+                after,
+                Math.min(limit, 500)));
+    }
+
     /**
      * Acknowledge receipt of synced messages
      * Called after client has processed pending messages
@@ -109,6 +129,18 @@ public class SyncController {
         return ApiResponse.success();
     }
 
+    /**
+     * Queue a message for many offline users at once (called by IM server)
+     * POST /sync/queue/batch
+     */
+    @PostMapping("/queue/batch")
+    public ApiResponse<BatchQueueResponse> queueOfflineMessages(@RequestBody BatchQueueMessageRequest request) {
+        int queued = offlineMessageService.queueMessageForUsers(
+                request.messageId(),
+                request.targetUserIds());
+        return ApiResponse.success(new BatchQueueResponse(queued));
+    }
+
     // Response DTOs
     public record SyncMessagesResponse(
             List<MessageResponse> messages,
@@ -120,6 +152,8 @@ public class SyncController {
             long pendingCount,
             boolean hasPendingMessages) {}
 
+    public record BatchQueueResponse(int queued) {}
+
     // Request DTOs
     public record SyncAckRequest(
             List<Long> offlineMessageIds,
@@ -131,4 +165,8 @@ public class SyncController {
             String targetDeviceId,
             Long messageId,
             Long conversationId) {}
+
+    public record BatchQueueMessageRequest(
+            Long messageId,
+            List<Long> targetUserIds) {}
 }
@@ -2,6 +2,7 @@ package com.lumichat.dto.request;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.Data;
 
 @Data
@@ -22,4 +23,8 @@ public class SendMessageRequest {
     private Long[] atUserIds;
 
     private String clientCreatedAt;
+
+    // Client-generated id; a retried send with the same id returns the original message
+    @Size(max = 64, message = "Client message ID must be at most 64 characters")
+    private String clientMsgId;
 }
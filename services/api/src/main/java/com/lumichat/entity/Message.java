@@ -10,6 +10,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "messages")
+@EntityListeners(MessageIdListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -17,8 +18,8 @@ import java.time.LocalDateTime;
 @Builder
 public class Message {
 
+    // Assigned by MessageIdListener; msgId defaults to the same value
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @Column(unique = true, nullable = false, length = 64)
@@ -55,6 +56,10 @@ public class Message {
 
     private LocalDateTime clientCreatedAt;
 
+    // Idempotency key for retried sends, unique per sender
+    @Column(length = 64)
+    private String clientMsgId;
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime serverCreatedAt;
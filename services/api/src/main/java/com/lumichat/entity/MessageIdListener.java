@@ -0,0 +1,28 @@
+package com.lumichat.entity;
+
+import com.lumichat.service.SnowflakeIdGenerator;
+import jakarta.persistence.PrePersist;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Assigns a message's id and msgId from {@link SnowflakeIdGenerator} before it
+ * is inserted. Hibernate resolves the listener through Spring, and since the
+ * id is known up front, inserts can be batched.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessageIdListener {
+
+    private final SnowflakeIdGenerator idGenerator;
+
+    @PrePersist
+    public void assignIds(Message message) {
+        if (message.getId() == null) {
+            message.setId(idGenerator.nextId());
+        }
+        if (message.getMsgId() == null) {
+            message.setMsgId(String.valueOf(message.getId()));
+        }
+    }
+}
@@ -2,10 +2,13 @@ package com.lumichat.repository;
 
 import com.lumichat.entity.Conversation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -13,4 +16,25 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
 
     @Query(value = "SELECT * FROM conversations c WHERE c.type = 'private_chat' AND c.participant_ids @> ARRAY[:userId, :otherUserId]::bigint[] LIMIT 1", nativeQuery = true)
     Optional<Conversation> findPrivateChat(@Param("userId") Long userId, @Param("otherUserId") Long otherUserId);
+
+    @Query("SELECT c.id FROM Conversation c WHERE c.group.id = :groupId")
+    List<Long> findIdsByGroupId(@Param("groupId") Long groupId);
+
+    /**
+     * Move the conversation's last message forward and add {@code count}
+     * messages from the sender to every other participant's unread count,
+     * in one statement. The last message never
+     * moves back if sends commit out of order.
+     */
+    @Modifying
+    @Query(value = "WITH last_msg AS (" +
+           "UPDATE conversations SET last_msg_id = :messageId, last_msg_time = :sentAt " +
+           "WHERE id = :conversationId AND (last_msg_id IS NULL OR last_msg_id < :messageId)) " +
+           "UPDATE user_conversations SET unread_count = unread_count + :count " +
+           "WHERE conversation_id = :conversationId AND user_id <> :senderId", nativeQuery = true)
+    int recordMessage(@Param("conversationId") Long conversationId,
+                      @Param("messageId") Long messageId,
+                      @Param("sentAt") LocalDateTime sentAt,
+                      @Param("senderId") Long senderId,
+                      @Param("count") int count);
 }
@@ -3,6 +3,7 @@ package com.lumichat.repository;
 import com.lumichat.entity.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -17,6 +18,10 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
 
     Optional<Message> findByMsgId(String msgId);
 
+    @Query("SELECT m FROM Message m WHERE m.sender.id = :senderId AND m.clientMsgId = :clientMsgId")
+    Optional<Message> findBySenderIdAndClientMsgId(@Param("senderId") Long senderId,
+                                                   @Param("clientMsgId") String clientMsgId);
+
     Page<Message> findByConversationIdOrderByServerCreatedAtDesc(
             Long conversationId, Pageable pageable);
 
@@ -50,16 +55,29 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
             @Param("clearedAt") LocalDateTime clearedAt,
             Pageable pageable);
 
-    @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId " +
-           "AND m.id < :beforeId " +
-           "AND m.serverCreatedAt > COALESCE(:clearedAt, CAST('1970-01-01' AS timestamp)) " +
-           "ORDER BY m.serverCreatedAt DESC")
-    Page<Message> findBeforeIdAfterClearedAt(
+    /**
+     * History keyset page, newest first: ids between {@code afterId} and
+     * {@code beforeId}, both exclusive. Walks idx_messages_conversation_id_desc
+     * and, as a Slice, reads one extra row instead of running a count query.
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender " +
+           "WHERE m.conversation.id = :conversationId " +
+           "AND m.id < :beforeId AND m.id > :afterId " +
+           "ORDER BY m.id DESC")
+    Slice<Message> findHistoryPage(
             @Param("conversationId") Long conversationId,
             @Param("beforeId") Long beforeId,
-            @Param("clearedAt") LocalDateTime clearedAt,
+            @Param("afterId") Long afterId,
             Pageable pageable);
 
+    /**
+     * Last message id at or before a point in time, to turn a clearedAt cutoff into an id bound
+     */
+    @Query("SELECT MAX(m.id) FROM Message m WHERE m.conversation.id = :conversationId " +
+           "AND m.serverCreatedAt <= :createdAt")
+    Optional<Long> findLastIdAtOrBefore(@Param("conversationId") Long conversationId,
+                                        @Param("createdAt") LocalDateTime createdAt);
+
     @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId " +
            "AND m.msgType = 'text' " +
            "AND LOWER(m.content) LIKE LOWER(CONCAT('%', :query, '%')) " +
@@ -83,6 +101,38 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
             @Param("clearedAt") LocalDateTime clearedAt,
             Pageable pageable);
 
+    /**
+     * Inbox sync: ids of messages between a cursor and {@code beforeId} across
+     * every conversation of the user, in id order. Cleared history stays
+     * hidden. With {@code unreadOnly}, each conversation also starts after the
+     * user's lastReadMsgId (used when a device has no cursor yet).
+     *
+     * Driven from the user's user_conversations rows: each conversation takes
+     * at most {@code limit} ids from its own range on (conversation_id, id),
+     * and the outer query merges them by id. The cost follows the user's
+     * conversations, not the traffic of everyone else since the cursor.
+     */
+    @Query(value = "SELECT inbox.id FROM user_conversations uc " +
+           "CROSS JOIN LATERAL (" +
+           "  SELECT m.id FROM messages m " +
+           "  WHERE m.conversation_id = uc.conversation_id " +
+           "  AND m.id > GREATEST(:afterId, CASE WHEN :unreadOnly THEN COALESCE(uc.last_read_msg_id, 0) ELSE 0 END) " +
+           "  AND m.id < :beforeId " +
+           "  AND (uc.cleared_at IS NULL OR m.server_created_at > uc.cleared_at) " +
+           "  ORDER BY m.id ASC " +
+           "  LIMIT :limit) inbox " +
+           "WHERE uc.user_id = :userId " +
+           "ORDER BY inbox.id ASC " +
+           "LIMIT :limit", nativeQuery = true)
+    List<Long> findInboxIdsAfter(@Param("userId") Long userId,
+                                 @Param("afterId") Long afterId,
+                                 @Param("beforeId") Long beforeId,
+                                 @Param("unreadOnly") boolean unreadOnly,
+                                 @Param("limit") int limit);
+
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender WHERE m.id IN :ids ORDER BY m.id ASC")
+    List<Message> findWithSenderByIdIn(@Param("ids") List<Long> ids);
+
     /**
      * Batch fetch latest message for each conversation.
      * Uses a subquery to get the max serverCreatedAt for each conversation,
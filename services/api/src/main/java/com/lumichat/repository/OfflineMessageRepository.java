@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -76,6 +77,26 @@ public interface OfflineMessageRepository extends JpaRepository<OfflineMessage,
            "WHERE om.deliveredAt IS NOT NULL AND om.deliveredAt < :before")
     int deleteDeliveredBefore(@Param("before") LocalDateTime before);
 
+    /**
+     * Queue a message for many users in one statement. Conversation comes from
+     * the message row; unknown users are skipped and users that already have
+     * the message pending are left alone.
+     *
+     * @return number of entries queued
+     */
+    @Modifying
+    @Query(value = "INSERT INTO offline_messages " +
+           "(target_user_id, message_id, conversation_id, created_at, expired_at, retry_count) " +
+           "SELECT u.id, m.id, m.conversation_id, CURRENT_TIMESTAMP, :expiredAt, 0 " +
+           "FROM users u JOIN messages m ON m.id = :messageId " +
+           "WHERE u.id IN (:userIds) " +
+           "AND NOT EXISTS (SELECT 1 FROM offline_messages om " +
+           "WHERE om.target_user_id = u.id AND om.message_id = m.id AND om.delivered_at IS NULL) " +
+           "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int queueForUsers(@Param("messageId") Long messageId,
+                      @Param("userIds") Collection<Long> userIds,
+                      @Param("expiredAt") LocalDateTime expiredAt);
+
     /**
      * Check if message already queued for user
      */
@@ -0,0 +1,33 @@
+package com.lumichat.repository;
+
+import com.lumichat.entity.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Buckets that currently have pending events.
+     */
+    @Query(value = "SELECT DISTINCT CAST(MOD(conversation_id, :buckets) AS INTEGER) FROM event_outbox",
+           nativeQuery = true)
+    List<Integer> findPendingBuckets(@Param("buckets") int buckets);
+
+    /**
+     * Take a bucket for the caller's transaction; false if another relay holds it.
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:space, :bucket)", nativeQuery = true)
+    boolean tryLockBucket(@Param("space") int space, @Param("bucket") int bucket);
+
+    /**
+     * Oldest pending events of a bucket, locked for the caller's transaction.
+     */
+    @Query(value = "SELECT * FROM event_outbox WHERE MOD(conversation_id, :buckets) = :bucket " +
+                   "ORDER BY id LIMIT :limit FOR UPDATE", nativeQuery = true)
+    List<OutboxEvent> lockBatch(@Param("bucket") int bucket, @Param("buckets") int buckets, @Param("limit") int limit);
+}
@@ -108,8 +108,8 @@ public class InternalServiceFilter extends OncePerRequestFilter {
         if (requestPath.startsWith("/internal/")) {
             return true;
         }
-        // Sync queue endpoint (called by IM server for offline message queueing)
-        if (requestPath.equals("/sync/queue")) {
+        // Sync queue endpoints (called by IM server for offline message queueing)
+        if (requestPath.equals("/sync/queue") || requestPath.equals("/sync/queue/batch")) {
             return true;
         }
         return false;
@@ -36,6 +36,7 @@ public class ConversationService {
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final ObjectMapper objectMapper;
+    private final ParticipantChangePublisher participantChangePublisher;
 
     /**
      * Get all conversations for a user.
@@ -350,6 +351,7 @@ public class ConversationService {
                 .build();
         userConversationRepository.save(uc2);
 
+        participantChangePublisher.conversationChanged(conversation.getId());
         log.info("Created private conversation {} between users {} and {}",
                 conversation.getId(), userId, targetUserId);
 
@@ -409,6 +411,7 @@ public class ConversationService {
                 .build();
         userConversationRepository.save(uc2);
 
+        participantChangePublisher.conversationChanged(conversation.getId());
         log.info("Created stranger conversation {} between users {} and {}",
                 conversation.getId(), userId, targetUserId);
 
@@ -0,0 +1,213 @@
+package com.lumichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumichat.entity.OutboxEvent;
+import com.lumichat.repository.OutboxEventRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transactional outbox for real-time events.
+ *
+ * Events are written to {@code event_outbox} in the transaction of the change
+ * they announce, so nothing is published for a rollback and nothing is lost if
+ * Redis is down at commit time. A relay thread is woken after each commit (and
+ * polls every {@code app.outbox.poll-interval} as a fallback). It locks the
+ * oldest {@code app.outbox.batch-size} rows of a bucket, resolves routes for
+ * chat messages, publishes the batch in one pipeline and deletes the rows. If
+ * publishing fails, the rows stay and the relay backs off, doubling up to
+ * {@code app.outbox.max-backoff}. Delivery is at-least-once: a crash between
+ * publish and delete repeats the batch.
+ *
+ * Each conversation hashes to one of {@code app.outbox.buckets} buckets, and a
+ * relay only publishes a bucket while it holds that bucket's advisory lock.
+ * API instances split the work bucket by bucket, and a conversation's events
+ * go out in id order, so a reaction can't overtake the message it refers to
+ * (that message committed, and got its lower id, first). Events of one
+ * conversation whose transactions overlap may still commit, and so be
+ * published, out of id order; clients order messages by id.
+ */
+@Component
+@Slf4j
+public class EventOutbox {
+
+    // First key of the (space, bucket) advisory locks, so they don't clash with other advisory locks
+    static final int LOCK_SPACE = 0x6f7574;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final RealtimeEventPublisher eventPublisher;
+    private final MessageRouter messageRouter;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final long maxBackoffMs;
+    private final int buckets;
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final ExecutorService relay;
+    private volatile boolean running;
+
+    public EventOutbox(
+            OutboxEventRepository outboxEventRepository,
+            RealtimeEventPublisher eventPublisher,
+            MessageRouter messageRouter,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.outbox.batch-size:200}") int batchSize,
+            @Value("${app.outbox.poll-interval:1000}") long pollIntervalMs,
+            @Value("${app.outbox.max-backoff:30000}") long maxBackoffMs,
+            @Value("${app.outbox.buckets:16}") int buckets) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.eventPublisher = eventPublisher;
+        this.messageRouter = messageRouter;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.buckets = buckets;
+        this.relay = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "event-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        relay.execute(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        relay.shutdownNow();
+    }
+
+    /**
+     * Queue an event of a conversation for a fixed channel
+     */
+    public void add(String channel, String json, Long conversationId) {
+        save(OutboxEvent.builder().channel(channel).payload(json).conversationId(conversationId).build());
+    }
+
+    /**
+     * Queue a chat message event, routed at publish time to the IM nodes holding its participants
+     */
+    public void addRouted(String json, List<Long> participantIds, Long conversationId) {
+        save(OutboxEvent.builder()
+                .payload(json)
+                .participantIds(participantIds.toArray(Long[]::new))
+                .conversationId(conversationId)
+                .build());
+    }
+
+    private void save(OutboxEvent event) {
+        outboxEventRepository.save(event);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp.release();
+                }
+            });
+        } else {
+            wakeUp.release();
+        }
+    }
+
+    private void run() {
+        long backoffMs = 0;
+        while (running) {
+            try {
+                if (backoffMs > 0) {
+                    Thread.sleep(backoffMs);
+                } else {
+                    wakeUp.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                }
+                wakeUp.drainPermits();
+                for (int bucket : outboxEventRepository.findPendingBuckets(buckets)) {
+                    while (relayBatch(bucket) == batchSize) {
+                        // Keep going while full batches are waiting
+                    }
+                }
+                backoffMs = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                backoffMs = Math.min(Math.max(backoffMs * 2, pollIntervalMs), maxBackoffMs);
+                log.warn("Outbox relay failed, retrying in {}ms: {}", backoffMs, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Publish and delete one batch of a bucket's committed events, unless
+     * another relay is publishing that bucket
+     *
+     * @return the number of events taken from the outbox
+     */
+    int relayBatch(int bucket) {
+        Integer relayed = transactionTemplate.execute(status -> {
+            if (!outboxEventRepository.tryLockBucket(LOCK_SPACE, bucket)) {
+                return 0;
+            }
+            List<OutboxEvent> events = outboxEventRepository.lockBatch(bucket, buckets, batchSize);
+            if (events.isEmpty()) {
+                return 0;
+            }
+            List<RealtimeEventPublisher.Publication> publications = new ArrayList<>();
+            for (OutboxEvent event : events) {
+                publications.addAll(resolve(event));
+            }
+            eventPublisher.publishAll(publications);
+            outboxEventRepository.deleteAllByIdInBatch(events.stream().map(OutboxEvent::getId).toList());
+            log.debug("Relayed {} outbox events as {} publications", events.size(), publications.size());
+            return events.size();
+        });
+        return relayed != null ? relayed : 0;
+    }
+
+    private List<RealtimeEventPublisher.Publication> resolve(OutboxEvent event) {
+        if (event.getChannel() != null) {
+            return List.of(new RealtimeEventPublisher.Publication(event.getChannel(), event.getPayload()));
+        }
+        try {
+            Long[] participantIds = event.getParticipantIds();
+            List<MessageRouter.Route> routes = messageRouter.route(
+                    participantIds != null ? Arrays.asList(participantIds) : List.of());
+            ObjectNode json = (ObjectNode) objectMapper.readTree(event.getPayload());
+            List<RealtimeEventPublisher.Publication> publications = new ArrayList<>(routes.size());
+            for (MessageRouter.Route route : routes) {
+                if (!route.isBroadcast()) {
+                    json.set("recipients", objectMapper.valueToTree(route.recipients()));
+                    json.set("offlineRecipients", objectMapper.valueToTree(route.offlineRecipients()));
+                }
+                publications.add(new RealtimeEventPublisher.Publication(route.channel(), objectMapper.writeValueAsString(json)));
+            }
+            return publications;
+        } catch (Exception e) {
+            // Unreadable payloads can never be published; drop them rather than block the outbox
+            log.error("Dropping outbox event {}: {}", event.getId(), e.getMessage());
+            return List.of();
+        }
+    }
+}
@@ -32,6 +32,7 @@ public class GroupService {
     private final GroupRepository groupRepository;
     private final GroupMemberRepository groupMemberRepository;
     private final UserRepository userRepository;
+    private final ParticipantChangePublisher participantChangePublisher;
 
     /**
      * Get all groups for a user
@@ -152,6 +153,9 @@ public class GroupService {
             throw new ForbiddenException("Only the owner can delete the group");
         }
 
+        // Resolve the group's conversations while they still point at it
+        participantChangePublisher.groupMembersChanged(groupId);
+
         // Delete all members first
         groupMemberRepository.deleteAllByGroupId(groupId);
 
@@ -193,6 +197,9 @@ public class GroupService {
 
         User inviterUser = inviter.getUser();
         List<GroupMember> addedMembers = addMembersInternal(group, inviterUser, request.getMemberIds());
+        if (!addedMembers.isEmpty()) {
+            participantChangePublisher.groupMembersChanged(groupId);
+        }
 
         log.info("User {} added {} members to group {}", userId, addedMembers.size(), groupId);
         return addedMembers.stream()
@@ -229,6 +236,7 @@ public class GroupService {
         }
 
         groupMemberRepository.delete(target);
+        participantChangePublisher.groupMembersChanged(groupId);
         log.info("User {} removed user {} from group {}", userId, targetUserId, groupId);
     }
 
@@ -280,6 +288,7 @@ public class GroupService {
         }
 
         groupMemberRepository.delete(member);
+        participantChangePublisher.groupMembersChanged(groupId);
         log.info("User {} left group {}", userId, groupId);
     }
 
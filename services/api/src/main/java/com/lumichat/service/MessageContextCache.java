@@ -0,0 +1,119 @@
+package com.lumichat.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lumichat.dto.response.UserResponse;
+import com.lumichat.exception.NotFoundException;
+import com.lumichat.repository.ConversationRepository;
+import com.lumichat.repository.UserConversationRepository;
+import com.lumichat.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-mostly lookups on the message send path: conversation membership, the
+ * participant list used for routing, and the sender's profile.
+ *
+ * Membership is only cached once confirmed, so a new member is found on the
+ * first miss without an eviction. Entries expire after {@code app.messaging.cache.ttl};
+ * changes made on this instance evict them straight away and again after the
+ * transaction commits, so a concurrent reload can't pin the old value. Other
+ * API instances evict when the change arrives on {@code im:participants}; the
+ * TTL only bounds staleness if that notification is lost.
+ */
+@Component
+public class MessageContextCache {
+
+    private final UserConversationRepository userConversationRepository;
+    private final ConversationRepository conversationRepository;
+    private final UserRepository userRepository;
+    private final Cache<Long, Set<Long>> members;
+    private final Cache<Long, List<Long>> participants;
+    private final Cache<Long, UserResponse> senders;
+
+    public MessageContextCache(
+            UserConversationRepository userConversationRepository,
+            ConversationRepository conversationRepository,
+            UserRepository userRepository,
+            @Value("${app.messaging.cache.ttl:60000}") long ttlMs,
+            @Value("${app.messaging.cache.max-size:100000}") long maxSize) {
+        this.userConversationRepository = userConversationRepository;
+        this.conversationRepository = conversationRepository;
+        this.userRepository = userRepository;
+        this.members = newCache(ttlMs, maxSize);
+        this.participants = newCache(ttlMs, maxSize);
+        this.senders = newCache(ttlMs, maxSize);
+    }
+
+    /**
+     * Whether the user has a conversation entry for this conversation
+     */
+    public boolean isMember(Long userId, Long conversationId) {
+        Set<Long> known = members.get(conversationId, id -> ConcurrentHashMap.newKeySet());
+        if (known.contains(userId)) {
+            return true;
+        }
+        if (userConversationRepository.findByUserIdAndConversationId(userId, conversationId).isEmpty()) {
+            return false;
+        }
+        known.add(userId);
+        return true;
+    }
+
+    /**
+     * Participant ids of a conversation, for routing
+     */
+    public List<Long> getParticipantIds(Long conversationId) {
+        return participants.get(conversationId, id -> conversationRepository.findById(id)
+                .map(conversation -> conversation.getParticipantIds() != null
+                        ? List.of(conversation.getParticipantIds())
+                        : List.<Long>of())
+                .orElseThrow(() -> new NotFoundException("Conversation not found")));
+    }
+
+    /**
+     * Profile of a message sender
+     */
+    public UserResponse getSender(Long userId) {
+        return senders.get(userId, id -> userRepository.findById(id)
+                .map(UserResponse::from)
+                .orElseThrow(() -> new NotFoundException("User not found")));
+    }
+
+    public void evictConversation(Long conversationId) {
+        evict(() -> {
+            members.invalidate(conversationId);
+            participants.invalidate(conversationId);
+        });
+    }
+
+    public void evictUser(Long userId) {
+        evict(() -> senders.invalidate(userId));
+    }
+
+    private void evict(Runnable action) {
+        action.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private static <K, V> Cache<K, V> newCache(long ttlMs, long maxSize) {
+        return Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .maximumSize(maxSize)
+                .build();
+    }
+}
@@ -0,0 +1,202 @@
+package com.lumichat.service;
+
+import com.lumichat.dto.request.SendMessageRequest;
+import com.lumichat.dto.response.MessageResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group commit for messages persisted on behalf of the IM server.
+ *
+ * When {@code app.messaging.group-commit.enabled} is set, sends are queued and
+ * a single writer thread commits whatever arrived within
+ * {@code window-ms} (up to {@code max-batch}) through
+ * {@link MessageService#sendMessages}: one transaction, one batched insert and
+ * one conversation update per sender. Each caller blocks until its batch has
+ * committed, so the IM server only ACKs durable messages. If a batch fails as
+ * a whole, its messages are retried one by one so a single bad message only
+ * fails its own sender. Disabled, {@link #send} is a plain
+ * {@link MessageService#sendMessage} call.
+ *
+ * Enqueueing and shutdown take the same lock, so nothing is queued after
+ * {@link #stop} has drained the queue. A caller waits at most
+ * {@code timeout-ms}; after that its message is withdrawn if still queued,
+ * otherwise its outcome is unknown to the caller. The wait must stay below
+ * {@code caller-timeout-ms}, the IM server's read timeout, so the API answers
+ * before the IM server gives up; a send whose outcome is still unknown is
+ * made safe to retry by its client message id.
+ */
+@Component
+@Slf4j
+public class MessageGroupCommitter {
+
+    private record Pending(MessageService.SendCommand command, CompletableFuture<MessageResponse> result) {}
+
+    private final MessageService messageService;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final long timeoutMs;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService writer;
+    private final Object lifecycle = new Object();
+    private volatile boolean running;
+
+    public MessageGroupCommitter(
+            MessageService messageService,
+            @Value("${app.messaging.group-commit.enabled:false}") boolean enabled,
+            @Value("${app.messaging.group-commit.window-ms:5}") long windowMs,
+            @Value("${app.messaging.group-commit.max-batch:200}") int maxBatch,
+            @Value("${app.messaging.group-commit.timeout-ms:3000}") long timeoutMs,
+            @Value("${app.messaging.group-commit.caller-timeout-ms:5000}") long callerTimeoutMs) {
+        if (timeoutMs >= callerTimeoutMs) {
+            throw new IllegalArgumentException("app.messaging.group-commit.timeout-ms (" + timeoutMs
+                    + "ms) must be shorter than caller-timeout-ms (" + callerTimeoutMs + "ms)");
+        }
+        this.messageService = messageService;
+        this.enabled = enabled;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatch = maxBatch;
+        this.timeoutMs = timeoutMs;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "message-group-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            synchronized (lifecycle) {
+                running = true;
+            }
+            writer.execute(this::run);
+            log.info("Message group commit enabled: window {}ms, max batch {}",
+                    TimeUnit.NANOSECONDS.toMillis(windowNanos), maxBatch);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        synchronized (lifecycle) {
+            running = false;
+        }
+        writer.shutdown();
+        if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+            writer.shutdownNow();
+        }
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (remaining.isEmpty()) {
+            return;
+        }
+        if (writer.awaitTermination(5, TimeUnit.SECONDS)) {
+            // Commit anything queued after the writer's last poll
+            commit(remaining);
+        } else {
+            // Never commit alongside a writer that is still stuck in a batch
+            log.warn("Group commit writer did not stop, rejecting {} queued messages", remaining.size());
+            remaining.forEach(pending -> pending.result().completeExceptionally(
+                    new IllegalStateException("Message group commit is shutting down")));
+        }
+    }
+
+    /**
+     * Persist and publish a message, returning once it has committed
+     */
+    public MessageResponse send(Long userId, String deviceId, SendMessageRequest request, MessageService.Origin origin) {
+        Pending pending = new Pending(
+                new MessageService.SendCommand(userId, deviceId, request, origin), new CompletableFuture<>());
+        boolean queued;
+        synchronized (lifecycle) {
+            queued = running && queue.add(pending);
+        }
+        if (!queued) {
+            return messageService.sendMessage(userId, deviceId, request, origin);
+        }
+        try {
+            return pending.result().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            if (queue.remove(pending)) {
+                throw new IllegalStateException("Timed out waiting for message group commit; message was not sent");
+            }
+            throw new IllegalStateException("Timed out waiting for message group commit");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for message group commit", e);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Pending> batch = new ArrayList<>();
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Message group commit loop failed", e);
+            }
+        }
+    }
+
+    void commit(List<Pending> batch) {
+        try {
+            List<MessageService.SendOutcome> outcomes = messageService.sendMessages(
+                    batch.stream().map(Pending::command).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                MessageService.SendOutcome outcome = outcomes.get(i);
+                if (outcome.error() != null) {
+                    batch.get(i).result().completeExceptionally(outcome.error());
+                } else {
+                    batch.get(i).result().complete(outcome.response());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Group commit of {} messages failed, retrying individually: {}", batch.size(), e.getMessage());
+            for (Pending pending : batch) {
+                MessageService.SendCommand command = pending.command();
+                try {
+                    pending.result().complete(messageService.sendMessage(
+                            command.userId(), command.deviceId(), command.request(), command.origin()));
+                } catch (Exception retryError) {
+                    pending.result().completeExceptionally(retryError);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.lumichat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which Redis channels a chat message is published to.
+ *
+ * IM servers register every connected device in {@code im:route:{userId}}
+ * (deviceId -> nodeId). In {@code node} mode the message goes only to
+ * {@code im:node:{nodeId}} for nodes that hold at least one recipient, together
+ * with the recipients on that node. Participants with no route are handed to a
+ * single node for offline queueing. Anything that cannot be resolved falls back
+ * to the shared {@code im:messages} broadcast channel.
+ */
+@Component
+@Slf4j
+public class MessageRouter {
+
+    public static final String BROADCAST_CHANNEL = "im:messages";
+
+    private static final String NODES_KEY = "im:nodes";
+    private static final String ROUTE_KEY_PREFIX = "im:route:";
+    private static final String NODE_CHANNEL_PREFIX = "im:node:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean nodeRouting;
+
+    public MessageRouter(
+            StringRedisTemplate redisTemplate,
+            @Value("${app.im.routing:node}") String routingMode) {
+        this.redisTemplate = redisTemplate;
+        this.nodeRouting = "node".equalsIgnoreCase(routingMode);
+    }
+
+    /**
+     * A publish target. {@code recipients} is null for the broadcast channel,
+     * where each IM server resolves participants itself.
+     */
+    public record Route(String channel, List<Long> recipients, List<Long> offlineRecipients) {
+
+        static Route broadcast() {
+            return new Route(BROADCAST_CHANNEL, null, null);
+        }
+
+        public boolean isBroadcast() {
+            return recipients == null;
+        }
+    }
+
+    public List<Route> route(Collection<Long> participantIds) {
+        if (!nodeRouting || participantIds == null || participantIds.isEmpty()) {
+            return List.of(Route.broadcast());
+        }
+
+        try {
+            List<Long> userIds = List.copyOf(new LinkedHashSet<>(participantIds));
+            List<Object> nodesPerUser = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long userId : userIds) {
+                    connection.hashCommands().hVals(routeKey(userId));
+                }
+                return null;
+            });
+            if (nodesPerUser == null || nodesPerUser.size() != userIds.size()) {
+                return List.of(Route.broadcast());
+            }
+
+            Map<String, List<Long>> recipientsByNode = new LinkedHashMap<>();
+            List<Long> offline = new ArrayList<>();
+            for (int i = 0; i < userIds.size(); i++) {
+                Long userId = userIds.get(i);
+                Set<String> nodes = new LinkedHashSet<>();
+                if (nodesPerUser.get(i) instanceof Collection<?> values) {
+                    values.forEach(node -> nodes.add(String.valueOf(node)));
+                }
+                if (nodes.isEmpty()) {
+                    offline.add(userId);
+                }
+                for (String node : nodes) {
+                    recipientsByNode.computeIfAbsent(node, k -> new ArrayList<>()).add(userId);
+                }
+            }
+
+            // Offline recipients ride along with the first routed node, or any live node
+            String offlineNode = null;
+            if (!offline.isEmpty()) {
+                offlineNode = !recipientsByNode.isEmpty()
+                        ? recipientsByNode.keySet().iterator().next()
+                        : redisTemplate.opsForSet().randomMember(NODES_KEY);
+                if (offlineNode == null) {
+                    // No IM server is running; nothing to deliver to
+                    return List.of(Route.broadcast());
+                }
+                recipientsByNode.putIfAbsent(offlineNode, new ArrayList<>());
+            }
+
+            List<Route> routes = new ArrayList<>(recipientsByNode.size());
+            for (Map.Entry<String, List<Long>> entry : recipientsByNode.entrySet()) {
+                routes.add(new Route(
+                        NODE_CHANNEL_PREFIX + entry.getKey(),
+                        entry.getValue(),
+                        entry.getKey().equals(offlineNode) ? offline : List.of()));
+            }
+            return routes;
+        } catch (Exception e) {
+            log.warn("Failed to resolve message routes, falling back to broadcast: {}", e.getMessage());
+            return List.of(Route.broadcast());
+        }
+    }
+
+    private static byte[] routeKey(Long userId) {
+        return (ROUTE_KEY_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+    }
+}
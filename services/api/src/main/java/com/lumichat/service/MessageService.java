@@ -4,7 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lumichat.dto.request.SendMessageRequest;
 import com.lumichat.dto.response.MessageResponse;
 import com.lumichat.dto.response.ReactionResponse;
-import com.lumichat.entity.Conversation;
+import com.lumichat.dto.response.UserResponse;
 import com.lumichat.entity.Message;
 import com.lumichat.entity.MessageReaction;
 import com.lumichat.entity.User;
@@ -21,17 +21,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -43,32 +44,36 @@ public class MessageService {
     private final ConversationRepository conversationRepository;
     private final UserConversationRepository userConversationRepository;
     private final UserRepository userRepository;
-    private final StringRedisTemplate redisTemplate;
+    private final MessageContextCache messageContextCache;
+    private final EventOutbox eventOutbox;
     private final ObjectMapper objectMapper;
     private final Clock clock;
 
-    private static final String REDIS_CHANNEL_MESSAGES = "im:messages";
     private static final String REDIS_CHANNEL_REACTIONS = "im:reactions";
 
     /**
-     * Get messages for a conversation with pagination
-     * Filters by clearedAt timestamp to support clear chat history feature
+     * Where a message entered the system. Every message's event is queued in
+     * the outbox exactly once, from here, regardless of origin.
+     */
+    public enum Origin {
+        rest, websocket
+    }
+
+    /**
+     * Get messages for a conversation with keyset pagination, newest first
+     * Hides history before clearedAt, converted to an id bound so the page stays an index range scan
      */
     public List<MessageResponse> getMessages(Long userId, Long conversationId, Long beforeId, int limit) {
         // Get user's conversation settings including clearedAt timestamp
         UserConversation uc = userConversationRepository.findByUserIdAndConversationId(userId, conversationId)
                 .orElseThrow(() -> new NotFoundException("Conversation not found"));
 
-        LocalDateTime clearedAt = uc.getClearedAt();
+        long afterId = uc.getClearedAt() != null
+                ? messageRepository.findLastIdAtOrBefore(conversationId, uc.getClearedAt()).orElse(0L)
+                : 0L;
 
-        Page<Message> messages;
-        if (beforeId != null) {
-            messages = messageRepository.findBeforeIdAfterClearedAt(
-                    conversationId, beforeId, clearedAt, PageRequest.of(0, limit));
-        } else {
-            messages = messageRepository.findByConversationIdAfterClearedAt(
-                    conversationId, clearedAt, PageRequest.of(0, limit));
-        }
+        Slice<Message> messages = messageRepository.findHistoryPage(
+                conversationId, beforeId != null ? beforeId : Long.MAX_VALUE, afterId, PageRequest.of(0, limit));
 
         return messages.getContent().stream()
                 .map(MessageResponse::fromWithSender)
@@ -76,19 +81,139 @@ public class MessageService {
     }
 
     /**
-     * Send a new message
+     * Send a new message through the REST API
      */
     @Transactional
     public MessageResponse sendMessage(Long userId, String deviceId, SendMessageRequest request) {
-        // Verify user has access to conversation
-        userConversationRepository.findByUserIdAndConversationId(userId, request.getConversationId())
-                .orElseThrow(() -> new NotFoundException("Conversation not found"));
+        return sendMessage(userId, deviceId, request, Origin.rest);
+    }
 
-        Conversation conversation = conversationRepository.findById(request.getConversationId())
-                .orElseThrow(() -> new NotFoundException("Conversation not found"));
+    /**
+     * Send a new message
+     */
+    @Transactional
+    public MessageResponse sendMessage(Long userId, String deviceId, SendMessageRequest request, Origin origin) {
+        PreparedMessage prepared = prepare(userId, deviceId, request);
+        Optional<Message> original = findOriginal(userId, request);
+        if (original.isPresent()) {
+            return toResponse(original.get(), prepared.sender());
+        }
+        Message message = messageRepository.save(prepared.message());
 
-        User sender = userRepository.findById(userId)
-                .orElseThrow(() -> new NotFoundException("User not found"));
+        // Update conversation last message and other participants' unread counts
+        conversationRepository.recordMessage(
+                request.getConversationId(), message.getId(), message.getServerCreatedAt(), userId, 1);
+
+        // Queue the real-time event; the outbox publishes it after commit
+        queueMessageEvent(userId, deviceId, message, prepared.sender(), prepared.participantIds(), origin);
+
+        log.info("User {} sent message {} to conversation {} via {}",
+                userId, message.getMsgId(), request.getConversationId(), origin);
+
+        return toResponse(message, prepared.sender());
+    }
+
+    /**
+     * A message waiting to be sent as part of a batch
+     */
+    public record SendCommand(Long userId, String deviceId, SendMessageRequest request, Origin origin) {}
+
+    /**
+     * The result of one {@link SendCommand}: a response, or the error it was rejected with
+     */
+    public record SendOutcome(MessageResponse response, RuntimeException error) {}
+
+    /**
+     * Send a batch of messages in one transaction.
+     * Commands that fail validation are reported in their outcome and left out;
+     * the rest are inserted together, and each conversation's last message and
+     * unread counts are updated once per sender rather than once per message.
+     */
+    @Transactional
+    public List<SendOutcome> sendMessages(List<SendCommand> commands) {
+        PreparedMessage[] prepared = new PreparedMessage[commands.size()];
+        SendOutcome[] outcomes = new SendOutcome[commands.size()];
+        List<Message> messages = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            SendCommand command = commands.get(i);
+            try {
+                PreparedMessage candidate = prepare(command.userId(), command.deviceId(), command.request());
+                Optional<Message> original = findOriginal(command.userId(), command.request());
+                if (original.isPresent()) {
+                    outcomes[i] = new SendOutcome(toResponse(original.get(), candidate.sender()), null);
+                    continue;
+                }
+                prepared[i] = candidate;
+                messages.add(candidate.message());
+            } catch (NotFoundException | BadRequestException e) {
+                outcomes[i] = new SendOutcome(null, e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return List.of(outcomes);
+        }
+
+        // Inserts are batched: ids are assigned before the flush
+        messageRepository.saveAll(messages);
+
+        // Messages are in id order, so the last one per sender is the newest
+        Map<ConversationSender, Message> lastBySender = new LinkedHashMap<>();
+        Map<ConversationSender, Integer> countBySender = new LinkedHashMap<>();
+        for (Message message : messages) {
+            ConversationSender key = new ConversationSender(
+                    message.getConversation().getId(), message.getSender().getId());
+            lastBySender.put(key, message);
+            countBySender.merge(key, 1, Integer::sum);
+        }
+        lastBySender.forEach((key, last) -> conversationRepository.recordMessage(
+                key.conversationId(), last.getId(), last.getServerCreatedAt(), key.senderId(), countBySender.get(key)));
+
+        for (int i = 0; i < commands.size(); i++) {
+            if (prepared[i] == null) {
+                continue;
+            }
+            SendCommand command = commands.get(i);
+            Message message = prepared[i].message();
+            queueMessageEvent(command.userId(), command.deviceId(), message,
+                    prepared[i].sender(), prepared[i].participantIds(), command.origin());
+            outcomes[i] = new SendOutcome(toResponse(message, prepared[i].sender()), null);
+        }
+
+        log.info("Sent {} of {} messages in one batch", messages.size(), commands.size());
+        return List.of(outcomes);
+    }
+
+    private record PreparedMessage(Message message, UserResponse sender, List<Long> participantIds) {}
+
+    /**
+     * The message an earlier attempt of this send already stored, if the client sent an idempotency key.
+     * A retry after an ambiguous failure (e.g. a timeout) then returns it instead of inserting twice;
+     * concurrent attempts are stopped by the unique (sender_id, client_msg_id) index.
+     */
+    private Optional<Message> findOriginal(Long userId, SendMessageRequest request) {
+        if (request.getClientMsgId() == null || request.getClientMsgId().isBlank()) {
+            return Optional.empty();
+        }
+        Optional<Message> original = messageRepository.findBySenderIdAndClientMsgId(userId, request.getClientMsgId());
+        original.ifPresent(message -> log.info("User {} retried message {} (client id {}), returning the original",
+                userId, message.getMsgId(), request.getClientMsgId()));
+        return original;
+    }
+
+    private record ConversationSender(Long conversationId, Long senderId) {}
+
+    /**
+     * Validate a send request and build its message.
+     * Membership, routing and the sender's profile come from the context cache,
+     * leaving the insert and recordMessage as the only statements on a warm path.
+     */
+    private PreparedMessage prepare(Long userId, String deviceId, SendMessageRequest request) {
+        Long conversationId = request.getConversationId();
+        if (!messageContextCache.isMember(userId, conversationId)) {
+            throw new NotFoundException("Conversation not found");
+        }
+        List<Long> participantIds = messageContextCache.getParticipantIds(conversationId);
+        UserResponse sender = messageContextCache.getSender(userId);
 
         // Parse message type
         Message.MessageType msgType;
@@ -109,11 +234,10 @@ public class MessageService {
             }
         }
 
-        // Create message
+        // Create message against references; the insert only needs their ids
         Message message = Message.builder()
-                .msgId(generateMsgId())
-                .conversation(conversation)
-                .sender(sender)
+                .conversation(conversationRepository.getReferenceById(conversationId))
+                .sender(userRepository.getReferenceById(userId))
                 .senderDeviceId(deviceId)
                 .msgType(msgType)
                 .content(request.getContent())
@@ -121,25 +245,10 @@ public class MessageService {
                 .quoteMsgId(request.getQuoteMsgId())
                 .atUserIds(request.getAtUserIds())
                 .clientCreatedAt(clientCreatedAt)
+                .clientMsgId(request.getClientMsgId() != null && !request.getClientMsgId().isBlank()
+                        ? request.getClientMsgId() : null)
                 .build();
-
-        message = messageRepository.save(message);
-
-        // Update conversation last message
-        conversation.setLastMsgTime(message.getServerCreatedAt());
-        conversation.setLastMsgId(message.getId());
-        conversationRepository.save(conversation);
-
-        // Increment unread count for other participants
-        userConversationRepository.incrementUnreadForOthers(conversation.getId(), userId);
-
-        // Publish message to Redis for real-time delivery
-        publishMessageToRedis(userId, deviceId, message, sender);
-
-        log.info("User {} sent message {} to conversation {}",
-                userId, message.getMsgId(), conversation.getId());
-
-        return MessageResponse.fromWithSender(message);
+        return new PreparedMessage(message, sender, participantIds);
     }
 
     /**
@@ -179,20 +288,16 @@ public class MessageService {
                 .orElseThrow(() -> new NotFoundException("Message not found"));
 
         // Verify user has access to target conversation
-        userConversationRepository.findByUserIdAndConversationId(userId, targetConversationId)
-                .orElseThrow(() -> new NotFoundException("Target conversation not found"));
-
-        Conversation targetConversation = conversationRepository.findById(targetConversationId)
-                .orElseThrow(() -> new NotFoundException("Target conversation not found"));
-
-        User sender = userRepository.findById(userId)
-                .orElseThrow(() -> new NotFoundException("User not found"));
+        if (!messageContextCache.isMember(userId, targetConversationId)) {
+            throw new NotFoundException("Target conversation not found");
+        }
+        List<Long> participantIds = messageContextCache.getParticipantIds(targetConversationId);
+        UserResponse sender = messageContextCache.getSender(userId);
 
         // Create forwarded message
         Message message = Message.builder()
-                .msgId(generateMsgId())
-                .conversation(targetConversation)
-                .sender(sender)
+                .conversation(conversationRepository.getReferenceById(targetConversationId))
+                .sender(userRepository.getReferenceById(userId))
                 .senderDeviceId(deviceId)
                 .msgType(originalMessage.getMsgType())
                 .content(originalMessage.getContent())
@@ -201,21 +306,17 @@ public class MessageService {
 
         message = messageRepository.save(message);
 
-        // Update conversation last message
-        targetConversation.setLastMsgTime(message.getServerCreatedAt());
-        targetConversation.setLastMsgId(message.getId());
-        conversationRepository.save(targetConversation);
+        // Update conversation last message and other participants' unread counts
+        conversationRepository.recordMessage(
+                targetConversationId, message.getId(), message.getServerCreatedAt(), userId, 1);
 
-        // Increment unread count for other participants
-        userConversationRepository.incrementUnreadForOthers(targetConversation.getId(), userId);
-
-        // Publish forwarded message to Redis for real-time delivery
-        publishMessageToRedis(userId, deviceId, message, sender);
+        // Queue the real-time event; the outbox publishes it after commit
+        queueMessageEvent(userId, deviceId, message, sender, participantIds, Origin.rest);
 
         log.info("User {} forwarded message {} to conversation {}",
                 userId, msgId, targetConversationId);
 
-        return MessageResponse.fromWithSender(message);
+        return toResponse(message, sender);
     }
 
     /**
@@ -319,8 +420,8 @@ public class MessageService {
 
         messageReactionRepository.save(reaction);
 
-        // Publish reaction to Redis for real-time delivery
-        publishReactionToRedis(userId, messageId, message.getConversation().getId(), emoji, "add");
+        // Queue reaction event for real-time delivery
+        queueReactionEvent(userId, messageId, message.getConversation().getId(), emoji, "add");
 
         log.info("User {} added reaction {} to message {}", userId, emoji, messageId);
     }
@@ -340,8 +441,8 @@ public class MessageService {
         // Delete the reaction
         messageReactionRepository.deleteByMessageIdAndUserIdAndEmoji(messageId, userId, emoji);
 
-        // Publish reaction removal to Redis for real-time delivery
-        publishReactionToRedis(userId, messageId, message.getConversation().getId(), emoji, "remove");
+        // Queue reaction removal event for real-time delivery
+        queueReactionEvent(userId, messageId, message.getConversation().getId(), emoji, "remove");
 
         log.info("User {} removed reaction {} from message {}", userId, emoji, messageId);
     }
@@ -375,8 +476,13 @@ public class MessageService {
                 .toList();
     }
 
-    private String generateMsgId() {
-        return UUID.randomUUID().toString().replace("-", "");
+    /**
+     * Build the response without touching the lazy conversation and sender references
+     */
+    private MessageResponse toResponse(Message message, UserResponse sender) {
+        MessageResponse response = MessageResponse.from(message);
+        response.setSender(sender);
+        return response;
     }
 
     private String truncateContent(String content, Message.MessageType msgType) {
@@ -393,10 +499,12 @@ public class MessageService {
     }
 
     /**
-     * Publish message to Redis for real-time delivery to online users.
-     * If publishing fails, the message is still saved to DB and will be delivered via offline queue.
+     * Queue the message's real-time event in the outbox; it is published to Redis once this transaction commits.
+     * If the event can't be built, the message is still saved and will be delivered via offline queue.
      */
-    private void publishMessageToRedis(Long userId, String deviceId, Message message, User sender) {
+    private void queueMessageEvent(Long userId, String deviceId, Message message, UserResponse sender,
+                                   List<Long> participantIds, Origin origin) {
+        String json;
         try {
             // Build sender info for display
             Map<String, Object> senderInfo = new LinkedHashMap<>();
@@ -438,23 +546,26 @@ public class MessageService {
             event.put("senderDeviceId", deviceId);
             event.put("conversationId", message.getConversation().getId());
             event.put("msgId", String.valueOf(message.getId())); // Use DB ID for offline queue
+            event.put("origin", origin.name());
             event.put("message", messagePayload);
 
-            String json = objectMapper.writeValueAsString(event);
-            redisTemplate.convertAndSend(REDIS_CHANNEL_MESSAGES, json);
-
-            log.debug("Published message {} to Redis channel {}", message.getMsgId(), REDIS_CHANNEL_MESSAGES);
+            json = objectMapper.writeValueAsString(event);
         } catch (Exception e) {
             // Don't throw - message is saved to DB, will be delivered via offline queue when user reconnects
-            log.error("Failed to publish message {} to Redis (will be delivered via offline queue): {}",
+            log.error("Failed to build event for message {} (will be delivered via offline queue): {}",
                     message.getMsgId(), e.getMessage());
+            return;
         }
+
+        // Routed to the IM nodes holding recipients (or broadcast) when the outbox relays it
+        eventOutbox.addRouted(json, participantIds, message.getConversation().getId());
     }
 
     /**
-     * Publish reaction to Redis for real-time delivery to online users
+     * Queue a reaction event in the outbox for real-time delivery to online users
      */
-    private void publishReactionToRedis(Long userId, Long messageId, Long conversationId, String emoji, String action) {
+    private void queueReactionEvent(Long userId, Long messageId, Long conversationId, String emoji, String action) {
+        String json;
         try {
             Map<String, Object> event = new LinkedHashMap<>();
             event.put("type", "reaction");
@@ -464,12 +575,12 @@ public class MessageService {
             event.put("conversationId", conversationId);
             event.put("emoji", emoji);
 
-            String json = objectMapper.writeValueAsString(event);
-            redisTemplate.convertAndSend(REDIS_CHANNEL_REACTIONS, json);
-
-            log.debug("Published reaction {} to Redis channel {}", action, REDIS_CHANNEL_REACTIONS);
+            json = objectMapper.writeValueAsString(event);
         } catch (Exception e) {
-            log.error("Failed to publish reaction to Redis: {}", e.getMessage());
+            log.error("Failed to build reaction event: {}", e.getMessage());
+            return;
         }
+
+        eventOutbox.add(REDIS_CHANNEL_REACTIONS, json, conversationId);
     }
 }
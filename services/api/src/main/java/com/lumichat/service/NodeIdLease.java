@@ -0,0 +1,148 @@
+package com.lumichat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The node id this API instance puts into {@link SnowflakeIdGenerator} ids.
+ *
+ * With {@code app.ids.node-id} set, that id is used as is and keeping it unique
+ * is up to the deployment. Left unset, the instance claims the lowest free id
+ * with {@code SET NX} on {@code api:node-id:{id}} and renews the lease every
+ * third of {@code app.ids.lease-ttl}, so two instances never issue ids under
+ * the same node id. An instance that finds its lease taken by another one
+ * (e.g. after a pause longer than the TTL) stops issuing ids rather than
+ * risk colliding primary keys.
+ */
+@Slf4j
+@Component
+public class NodeIdLease {
+
+    static final String KEY_PREFIX = "api:node-id:";
+
+    // Renews the lease, or takes it again if it expired and nobody claimed it meanwhile.
+    // Returns 0 when another instance holds it.
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "local holder = redis.call('GET', KEYS[1]) " +
+            "if holder == ARGV[1] then redis.call('PEXPIRE', KEYS[1], ARGV[2]) return 1 end " +
+            "if not holder then redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end " +
+            "return 0",
+            Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String token = UUID.randomUUID().toString();
+    private final long nodeId;
+    private final boolean leased;
+    private final long ttlMs;
+    private final ScheduledExecutorService renewer;
+    private volatile boolean held = true;
+    private volatile long lastRenewedNanos = System.nanoTime();
+
+    public NodeIdLease(
+            StringRedisTemplate redisTemplate,
+            @Value("${app.ids.node-id:-1}") long configuredNodeId,
+            @Value("${app.ids.lease-ttl:30000}") long ttlMs) {
+        this.redisTemplate = redisTemplate;
+        this.ttlMs = ttlMs;
+        if (configuredNodeId >= 0) {
+            this.nodeId = configuredNodeId;
+            this.leased = false;
+            this.renewer = null;
+            log.info("Using configured node id {}", nodeId);
+            return;
+        }
+        this.nodeId = claim();
+        this.leased = true;
+        this.renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "node-id-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Claimed node id {} with a {}ms lease", nodeId, ttlMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (leased) {
+            long period = Math.max(ttlMs / 3, 1);
+            renewer.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Fail if this instance lost its node id, or can't tell because Redis has
+     * been unreachable for a whole lease
+     */
+    public void checkHeld() {
+        if (!leased) {
+            return;
+        }
+        if (!held || System.nanoTime() - lastRenewedNanos > TimeUnit.MILLISECONDS.toNanos(ttlMs)) {
+            throw new IllegalStateException("Node id " + nodeId + " is no longer leased by this API instance");
+        }
+    }
+
+    @PreDestroy
+    public void release() {
+        if (!leased) {
+            return;
+        }
+        renewer.shutdownNow();
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(KEY_PREFIX + nodeId), token);
+        } catch (Exception e) {
+            log.warn("Failed to release node id {}, it expires in {}ms: {}", nodeId, ttlMs, e.getMessage());
+        }
+    }
+
+    private long claim() {
+        for (long id = 0; id <= SnowflakeIdGenerator.MAX_NODE_ID; id++) {
+            Boolean claimed = redisTemplate.opsForValue()
+                    .setIfAbsent(KEY_PREFIX + id, token, Duration.ofMillis(ttlMs));
+            if (Boolean.TRUE.equals(claimed)) {
+                return id;
+            }
+        }
+        throw new IllegalStateException("All " + (SnowflakeIdGenerator.MAX_NODE_ID + 1)
+                + " node ids are leased; set app.ids.node-id explicitly or stop an API instance");
+    }
+
+    void renew() {
+        try {
+            Long renewed = redisTemplate.execute(RENEW_SCRIPT, List.of(KEY_PREFIX + nodeId), token, String.valueOf(ttlMs));
+            boolean nowHeld = renewed != null && renewed == 1;
+            if (held && !nowHeld) {
+                log.error("Node id {} was claimed by another API instance; no more ids will be issued", nodeId);
+            }
+            held = nowHeld;
+            if (nowHeld) {
+                lastRenewedNanos = System.nanoTime();
+            }
+        } catch (Exception e) {
+            // Keep issuing until the lease would have expired; nobody else can claim it before that
+            log.warn("Failed to renew node id {} lease: {}", nodeId, e.getMessage());
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.lumichat.exception.NotFoundException;
 import com.lumichat.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -24,6 +25,11 @@ public class OfflineMessageService {
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final ConversationRepository conversationRepository;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+
+    // How long a message id must be old before inbox sync hands it out
+    @Value("${app.messaging.inbox.safety-lag:5000}")
+    private long inboxSafetyLagMs;
 
     private static final int DEFAULT_BATCH_SIZE = 100;
     private static final int MESSAGE_EXPIRY_DAYS = 7;
@@ -62,6 +68,22 @@ public class OfflineMessageService {
                 messageId, targetUserId, targetDeviceId);
     }
 
+    /**
+     * Queue a message for several offline users with a single insert
+     *
+     * @return number of users the message was newly queued for
+     */
+    @Transactional
+    public int queueMessageForUsers(Long messageId, List<Long> targetUserIds) {
+        if (targetUserIds == null || targetUserIds.isEmpty()) {
+            return 0;
+        }
+        int queued = offlineMessageRepository.queueForUsers(
+                messageId, targetUserIds, LocalDateTime.now().plusDays(MESSAGE_EXPIRY_DAYS));
+        log.info("Queued message {} for {} of {} offline users", messageId, queued, targetUserIds.size());
+        return queued;
+    }
+
     /**
      * Get pending messages for a user/device
      */
@@ -76,6 +98,40 @@ public class OfflineMessageService {
                 .toList();
     }
 
+    /**
+     * Cursor-based inbox sync: messages after {@code afterId} across all of the
+     * user's conversations, read straight from messages. Without an explicit
+     * cursor the device's last synced message id is used; a device that never
+     * synced gets what is unread in each conversation.
+     *
+     * Ids are assigned before commit by API instances whose clocks differ, so a
+     * lower id can commit after a higher one. Only ids older than
+     * {@code app.messaging.inbox.safety-lag} are handed out, which guarantees
+     * no message is skipped as long as send transactions plus clock skew stay
+     * under the lag. Newer messages reach online devices in real time and
+     * show up here once they have settled.
+     */
+    public InboxPage getInbox(Long userId, String deviceId, Long afterId, int limit) {
+        int effectiveLimit = limit > 0 ? limit : DEFAULT_BATCH_SIZE;
+        Long cursor = afterId != null ? afterId : getLastSyncedMessageId(userId, deviceId);
+        long settledBefore = snowflakeIdGenerator.upperBoundOlderThan(inboxSafetyLagMs);
+
+        // One extra row tells whether another page follows, without a count query
+        List<Long> ids = messageRepository.findInboxIdsAfter(
+                userId, cursor != null ? cursor : 0L, settledBefore, cursor == null, effectiveLimit + 1);
+        boolean hasMore = ids.size() > effectiveLimit;
+        List<Message> page = ids.isEmpty() ? List.of()
+                : messageRepository.findWithSenderByIdIn(hasMore ? ids.subList(0, effectiveLimit) : ids);
+
+        Long nextCursor = page.isEmpty() ? cursor : page.get(page.size() - 1).getId();
+        return new InboxPage(
+                page.stream().map(MessageResponse::fromWithSender).toList(),
+                nextCursor,
+                hasMore);
+    }
+
+    public record InboxPage(List<MessageResponse> messages, Long nextCursor, boolean hasMore) {}
+
     /**
      * Get pending message count for a user
      */
@@ -0,0 +1,82 @@
+package com.lumichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumichat.repository.ConversationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Notifies IM servers and other API instances that a conversation's participant
+ * list changed, so they can drop their cached copy, and evicts this instance's
+ * {@link MessageContextCache} entry straight away.
+ * Publishing is deferred until the surrounding transaction commits; otherwise
+ * an IM server could reload and cache the old membership before it is visible.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ParticipantChangePublisher {
+
+    public static final String REDIS_CHANNEL_PARTICIPANTS = "im:participants";
+
+    private final ConversationRepository conversationRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MessageContextCache messageContextCache;
+
+    /**
+     * Publish a participants change for a single conversation
+     */
+    public void conversationChanged(Long conversationId) {
+        messageContextCache.evictConversation(conversationId);
+        runAfterCommit(() -> publish(conversationId));
+    }
+
+    /**
+     * Publish a participants change for every conversation backed by a group
+     */
+    public void groupMembersChanged(Long groupId) {
+        List<Long> conversationIds = conversationRepository.findIdsByGroupId(groupId);
+        if (conversationIds.isEmpty()) {
+            return;
+        }
+        conversationIds.forEach(messageContextCache::evictConversation);
+        runAfterCommit(() -> conversationIds.forEach(this::publish));
+    }
+
+    private void publish(Long conversationId) {
+        try {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("type", "participants_changed");
+            event.put("conversationId", conversationId);
+
+            redisTemplate.convertAndSend(REDIS_CHANNEL_PARTICIPANTS, objectMapper.writeValueAsString(event));
+            log.debug("Published participants change for conversation {}", conversationId);
+        } catch (Exception e) {
+            // IM servers and other API instances fall back to their cache TTL
+            log.error("Failed to publish participants change for conversation {}: {}",
+                    conversationId, e.getMessage());
+        }
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.lumichat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes real-time delivery events (messages, reactions) for the IM servers.
+ *
+ * The backend is chosen with {@code app.im.delivery}:
+ * <ul>
+ *   <li>{@code pubsub} (default): fire-and-forget {@code PUBLISH} on the channel.</li>
+ *   <li>{@code streams}: {@code XADD} to {@code {channel}:stream}, trimmed to roughly
+ *       {@code app.im.stream-max-len} entries, so IM servers can replay after a restart.</li>
+ *   <li>{@code both}: do both, for running pub/sub and stream IM nodes side by side.</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class RealtimeEventPublisher {
+
+    public static final String STREAM_SUFFIX = ":stream";
+    public static final String PAYLOAD_FIELD = "payload";
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean pubSub;
+    private final boolean streams;
+    private final long streamMaxLen;
+
+    /**
+     * An event bound for one channel
+     */
+    public record Publication(String channel, String json) {}
+
+    public RealtimeEventPublisher(
+            StringRedisTemplate redisTemplate,
+            @Value("${app.im.delivery:pubsub}") String delivery,
+            @Value("${app.im.stream-max-len:100000}") long streamMaxLen) {
+        this.redisTemplate = redisTemplate;
+        this.pubSub = !"streams".equalsIgnoreCase(delivery);
+        this.streams = "streams".equalsIgnoreCase(delivery) || "both".equalsIgnoreCase(delivery);
+        this.streamMaxLen = streamMaxLen;
+    }
+
+    public void publish(String channel, String json) {
+        if (pubSub) {
+            redisTemplate.convertAndSend(channel, json);
+        }
+        if (streams) {
+            redisTemplate.execute((RedisCallback<Object>) connection -> xAdd(connection, channel, json));
+        }
+    }
+
+    /**
+     * Publish several events in one pipelined round trip.
+     * Throws if Redis is unreachable; the caller decides whether to retry.
+     */
+    public void publishAll(List<Publication> publications) {
+        if (publications.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Publication publication : publications) {
+                if (pubSub) {
+                    connection.publish(publication.channel().getBytes(StandardCharsets.UTF_8),
+                            publication.json().getBytes(StandardCharsets.UTF_8));
+                }
+                if (streams) {
+                    xAdd(connection, publication.channel(), publication.json());
+                }
+            }
+            return null;
+        });
+    }
+
+    private RecordId xAdd(RedisConnection connection, String channel, String json) {
+        byte[] key = (channel + STREAM_SUFFIX).getBytes(StandardCharsets.UTF_8);
+        Map<byte[], byte[]> body = Map.of(
+                PAYLOAD_FIELD.getBytes(StandardCharsets.UTF_8), json.getBytes(StandardCharsets.UTF_8));
+        return connection.streamCommands().xAdd(
+                StreamRecords.rawBytes(body).withStreamKey(key),
+                XAddOptions.maxlen(streamMaxLen).approximateTrimming(true));
+    }
+}
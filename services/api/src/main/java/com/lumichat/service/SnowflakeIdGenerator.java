@@ -0,0 +1,76 @@
+package com.lumichat.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * Time-ordered 64-bit ids, unique across API instances.
+ *
+ * Layout, high to low: 41 bits of milliseconds since 2024-01-01, 5 bits of
+ * {@code app.ids.node-id}, 7 bits of per-millisecond sequence. That is 53 bits
+ * in total, so ids survive a round trip through a JavaScript number. Each node
+ * issues up to 128 ids per millisecond; beyond that, and when the clock steps
+ * back, it borrows the next millisecond instead of blocking, so ids stay
+ * strictly increasing per node. The node id comes from {@link NodeIdLease}.
+ */
+@Component
+public class SnowflakeIdGenerator {
+
+    static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 5;
+    static final int SEQUENCE_BITS = 7;
+
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final Clock clock;
+    private final long nodeId;
+    private final NodeIdLease lease;
+
+    private long lastMillis = -1;
+    private long sequence;
+
+    @Autowired
+    public SnowflakeIdGenerator(Clock clock, NodeIdLease lease) {
+        this(clock, lease.getNodeId(), lease);
+    }
+
+    SnowflakeIdGenerator(Clock clock, long nodeId) {
+        this(clock, nodeId, null);
+    }
+
+    private SnowflakeIdGenerator(Clock clock, long nodeId, NodeIdLease lease) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("app.ids.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.clock = clock;
+        this.nodeId = nodeId;
+        this.lease = lease;
+    }
+
+    public synchronized long nextId() {
+        if (lease != null) {
+            lease.checkHeld();
+        }
+        long now = clock.millis() - EPOCH;
+        if (now > lastMillis) {
+            lastMillis = now;
+            sequence = 0;
+        } else if (++sequence > MAX_SEQUENCE) {
+            lastMillis++;
+            sequence = 0;
+        }
+        return (lastMillis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * Exclusive upper bound on ids issued at least {@code lagMs} ago, on any node.
+     * Clock skew between nodes and borrowed milliseconds eat into the lag.
+     */
+    public long upperBoundOlderThan(long lagMs) {
+        return (clock.millis() - lagMs - EPOCH + 1) << (NODE_BITS + SEQUENCE_BITS);
+    }
+}
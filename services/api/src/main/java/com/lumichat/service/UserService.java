@@ -22,6 +22,7 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final MessageContextCache messageContextCache;
 
     /**
      * Get user by ID
@@ -84,6 +85,7 @@ public class UserService {
         }
 
         user = userRepository.save(user);
+        messageContextCache.evictUser(userId);
         log.info("Updated profile for user: {}", userId);
 
         return UserResponse.from(user);
@@ -97,6 +99,7 @@ public class UserService {
         User user = getUserById(userId);
         user.setAvatar(avatarUrl);
         user = userRepository.save(user);
+        messageContextCache.evictUser(userId);
         log.info("Updated avatar for user: {}", userId);
         return UserResponse.from(user);
     }
@@ -159,6 +162,7 @@ public class UserService {
         user.setVoiceIntroUrl(voiceIntroUrl);
         user.setVoiceIntroDuration(duration);
         user = userRepository.save(user);
+        messageContextCache.evictUser(userId);
         log.info("Updated voice introduction for user: {}", userId);
         return UserResponse.from(user);
     }
@@ -172,6 +176,7 @@ public class UserService {
         user.setVoiceIntroUrl(null);
         user.setVoiceIntroDuration(null);
         user = userRepository.save(user);
+        messageContextCache.evictUser(userId);
         log.info("Deleted voice introduction for user: {}", userId);
         return UserResponse.from(user);
     }
@@ -210,6 +215,7 @@ public class UserService {
 
         user.setUid(newUid);
         user = userRepository.save(user);
+        messageContextCache.evictUser(userId);
         log.info("Updated UID for user {} to {}", userId, newUid);
         return UserResponse.from(user);
     }
@@ -251,6 +257,7 @@ public class UserService {
 
         user.setNickname(newNickname);
         user = userRepository.save(user);
+        messageContextCache.evictUser(userId);
         log.info("Updated nickname for user {} to {}", userId, newNickname);
         return UserResponse.from(user);
     }
@@ -0,0 +1,14 @@
+-- One pending offline entry per user and message
+-- Lets bulk queueing insert with ON CONFLICT DO NOTHING instead of checking each row first
+
+-- Drop duplicate pending entries, keeping the oldest
+DELETE FROM offline_messages om
+USING offline_messages keep
+WHERE om.target_user_id = keep.target_user_id
+  AND om.message_id = keep.message_id
+  AND om.delivered_at IS NULL
+  AND keep.delivered_at IS NULL
+  AND om.id > keep.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_offline_messages_pending
+    ON offline_messages(target_user_id, message_id) WHERE delivered_at IS NULL;
@@ -0,0 +1,7 @@
+-- Message ids are assigned by the API (SnowflakeIdGenerator) before insert
+-- Existing rows keep their sequence ids, which sort before every generated id
+ALTER TABLE messages ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS messages_id_seq;
+
+-- msg_id already has the index behind its UNIQUE constraint
+DROP INDEX IF EXISTS idx_messages_msg_id;
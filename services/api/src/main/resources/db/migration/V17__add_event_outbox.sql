@@ -0,0 +1,12 @@
+-- Real-time events written in the same transaction as the change they announce
+-- EventOutbox relays committed rows to Redis and deletes them
+CREATE TABLE event_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    channel VARCHAR(100),
+    payload TEXT NOT NULL,
+    participant_ids BIGINT[],
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON TABLE event_outbox IS 'Real-time events awaiting publication to Redis';
+COMMENT ON COLUMN event_outbox.channel IS 'Target channel; NULL for chat messages routed to IM nodes by participant';
@@ -0,0 +1,8 @@
+-- Keyset index for message history: getMessages pages with
+-- WHERE conversation_id = ? AND id < ? ORDER BY id DESC LIMIT ?
+-- Snowflake ids are time-ordered, so this walks the same order as server_created_at
+CREATE INDEX IF NOT EXISTS idx_messages_conversation_id_desc
+    ON messages(conversation_id, id DESC);
+
+-- Covered by the leading column of the keyset index
+DROP INDEX IF EXISTS idx_messages_conversation_id;
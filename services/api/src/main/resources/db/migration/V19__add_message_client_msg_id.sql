@@ -0,0 +1,6 @@
+-- Client-generated message id, used to make retried sends idempotent
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS client_msg_id VARCHAR(64);
+
+-- One message per sender and client id; also serves the lookup on every keyed send
+CREATE UNIQUE INDEX IF NOT EXISTS uk_messages_sender_client_msg_id
+    ON messages(sender_id, client_msg_id) WHERE client_msg_id IS NOT NULL;
@@ -0,0 +1,5 @@
+-- Events of one conversation hash to one relay bucket, so they are published in id order
+-- 0 for rows written before this column existed
+ALTER TABLE event_outbox ADD COLUMN conversation_id BIGINT NOT NULL DEFAULT 0;
+
+COMMENT ON COLUMN event_outbox.conversation_id IS 'Conversation the event belongs to; picks the relay bucket';
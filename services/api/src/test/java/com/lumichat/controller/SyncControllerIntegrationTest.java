@@ -21,6 +21,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -445,4 +446,122 @@ class SyncControllerIntegrationTest extends PostgresTestContainerConfig {
             assertThat(pending).isEqualTo(1);
         }
     }
+
+    @Nested
+    @DisplayName("GET /sync/inbox")
+    class InboxTests {
+
+        @Test
+        @DisplayName("Should return messages after the cursor in id order with the next cursor")
+        void shouldReturnMessagesAfterCursor() throws Exception {
+            // Given
+            Message first = createMessage(conversation, user2, "First");
+            Message second = createMessage(conversation, user2, "Second");
+            Message third = createMessage(conversation, user2, "Third");
+
+            // When/Then
+            mockMvc.perform(get("/sync/inbox")
+                            .param("after", String.valueOf(first.getId()))
+                            .param("limit", "1")
+                            .header("Authorization", "Bearer " + user1Token))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.messages.length()").value(1))
+                    .andExpect(jsonPath("$.data.messages[0].id").value(second.getId()))
+                    .andExpect(jsonPath("$.data.nextCursor").value(second.getId()))
+                    .andExpect(jsonPath("$.data.hasMore").value(true));
+
+            mockMvc.perform(get("/sync/inbox")
+                            .param("after", String.valueOf(second.getId()))
+                            .header("Authorization", "Bearer " + user1Token))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.messages.length()").value(1))
+                    .andExpect(jsonPath("$.data.messages[0].id").value(third.getId()))
+                    .andExpect(jsonPath("$.data.hasMore").value(false));
+        }
+
+        @Test
+        @DisplayName("Should not return messages from conversations the user is not in")
+        void shouldOnlyReturnOwnConversations() throws Exception {
+            // Given
+            User user3 = createUser("USER003", "user3@example.com", "User Three");
+            Conversation other = createPrivateConversation(user2, user3);
+            createMessage(other, user3, "Not for user1");
+
+            // When/Then
+            mockMvc.perform(get("/sync/inbox")
+                            .param("after", "0")
+                            .header("Authorization", "Bearer " + user1Token))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.messages.length()").value(0));
+        }
+
+        @Test
+        @DisplayName("Should merge unread messages of each conversation by id for a device that never synced")
+        void shouldMergeUnreadAcrossConversations() throws Exception {
+            // Given - read up to the first message of the first conversation only
+            User user3 = createUser("USER003", "user3@example.com", "User Three");
+            Conversation other = createPrivateConversation(user1, user3);
+            Message read = createMessage(conversation, user2, "Read");
+            Message first = createMessage(other, user3, "Unread one");
+            Message second = createMessage(conversation, user2, "Unread two");
+            Message third = createMessage(other, user3, "Unread three");
+            UserConversation uc = userConversationRepository
+                    .findByUserIdAndConversationId(user1.getId(), conversation.getId()).orElseThrow();
+            uc.setLastReadMsgId(read.getId());
+            userConversationRepository.save(uc);
+
+            // When/Then
+            mockMvc.perform(get("/sync/inbox")
+                            .header("Authorization", "Bearer " + user1Token))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.messages.length()").value(3))
+                    .andExpect(jsonPath("$.data.messages[0].id").value(first.getId()))
+                    .andExpect(jsonPath("$.data.messages[1].id").value(second.getId()))
+                    .andExpect(jsonPath("$.data.messages[2].id").value(third.getId()))
+                    .andExpect(jsonPath("$.data.hasMore").value(false));
+        }
+    }
+
+    @Nested
+    @DisplayName("POST /sync/queue/batch")
+    class BatchQueueMessageTests {
+
+        @Test
+        @DisplayName("Should queue message for all offline users in one call, skipping pending and unknown users")
+        void shouldQueueMessageForManyUsers() throws Exception {
+            // Given
+            Message msg = createMessage(conversation, user2, "Test message");
+            createOfflineMessage(user1, "device-user1", msg);
+
+            SyncController.BatchQueueMessageRequest request = new SyncController.BatchQueueMessageRequest(
+                    msg.getId(),
+                    List.of(user1.getId(), user2.getId(), 999999L)
+            );
+
+            // When/Then
+            mockMvc.perform(post("/sync/queue/batch")
+                            .header("X-Internal-Service", "im-server")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.code").value(0))
+                    .andExpect(jsonPath("$.data.queued").value(1));
+
+            assertThat(offlineMessageRepository.countPendingByUserId(user1.getId())).isEqualTo(1);
+            assertThat(offlineMessageRepository.countPendingByUserId(user2.getId())).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("Should reject callers without the internal service header")
+        void shouldRejectNonInternalCallers() throws Exception {
+            SyncController.BatchQueueMessageRequest request = new SyncController.BatchQueueMessageRequest(
+                    1L, List.of(user1.getId()));
+
+            mockMvc.perform(post("/sync/queue/batch")
+                            .header("X-Internal-Service", "unknown")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isForbidden());
+        }
+    }
 }
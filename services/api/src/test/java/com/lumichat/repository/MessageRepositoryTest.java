@@ -0,0 +1,32 @@
+package com.lumichat.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("MessageRepository Tests")
+class MessageRepositoryTest {
+
+    @Test
+    @DisplayName("Inbox sync should scan per conversation of the user, not the whole messages table")
+    void inboxQueryShouldBeDrivenByUserConversations() throws Exception {
+        // Given
+        Query query = MessageRepository.class
+                .getMethod("findInboxIdsAfter", Long.class, Long.class, Long.class, boolean.class, int.class)
+                .getAnnotation(Query.class);
+
+        // When
+        String sql = query.value().replaceAll("\\s+", " ");
+
+        // Then - the outer rows are the user's conversations, each one bounded
+        // by its own (conversation_id, id) range and limit
+        assertThat(query.nativeQuery()).isTrue();
+        assertThat(sql).startsWith("SELECT inbox.id FROM user_conversations uc CROSS JOIN LATERAL (");
+        assertThat(sql).contains("WHERE m.conversation_id = uc.conversation_id AND m.id > GREATEST(:afterId,");
+        assertThat(sql).contains("ORDER BY m.id ASC LIMIT :limit) inbox");
+        assertThat(sql).endsWith("WHERE uc.user_id = :userId ORDER BY inbox.id ASC LIMIT :limit");
+        assertThat(sql).doesNotContain("EXISTS");
+    }
+}
@@ -53,6 +53,9 @@ class ConversationServiceTest {
     @Mock
     private ObjectMapper objectMapper;
 
+    @Mock
+    private ParticipantChangePublisher participantChangePublisher;
+
     @InjectMocks
     private ConversationService conversationService;
 
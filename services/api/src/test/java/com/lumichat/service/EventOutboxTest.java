@@ -0,0 +1,102 @@
+package com.lumichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumichat.entity.OutboxEvent;
+import com.lumichat.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EventOutbox Tests")
+class EventOutboxTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private RealtimeEventPublisher eventPublisher;
+
+    @Mock
+    private MessageRouter messageRouter;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private EventOutbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        outbox = new EventOutbox(outboxEventRepository, eventPublisher, messageRouter, new ObjectMapper(),
+                transactionManager, 200, 1000, 30000, 16);
+    }
+
+    @Test
+    @DisplayName("Should route chat events, publish the batch in one call and delete it")
+    @SuppressWarnings("unchecked")
+    void shouldRelayBatch() {
+        // Given
+        when(outboxEventRepository.tryLockBucket(EventOutbox.LOCK_SPACE, 3)).thenReturn(true);
+        when(outboxEventRepository.lockBatch(3, 16, 200)).thenReturn(List.of(
+                OutboxEvent.builder().id(1L).payload("{\"type\":\"chat_message\"}")
+                        .participantIds(new Long[]{1L, 2L}).build(),
+                OutboxEvent.builder().id(2L).channel("im:reactions").payload("{\"type\":\"reaction\"}").build()));
+        when(messageRouter.route(List.of(1L, 2L))).thenReturn(List.of(
+                new MessageRouter.Route("im:node:a", List.of(1L), List.of(2L))));
+
+        // When
+        int relayed = outbox.relayBatch(3);
+
+        // Then
+        assertThat(relayed).isEqualTo(2);
+        ArgumentCaptor<List<RealtimeEventPublisher.Publication>> captor = ArgumentCaptor.forClass(List.class);
+        verify(eventPublisher).publishAll(captor.capture());
+        assertThat(captor.getValue()).containsExactly(
+                new RealtimeEventPublisher.Publication("im:node:a",
+                        "{\"type\":\"chat_message\",\"recipients\":[1],\"offlineRecipients\":[2]}"),
+                new RealtimeEventPublisher.Publication("im:reactions", "{\"type\":\"reaction\"}"));
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+    }
+
+    @Test
+    @DisplayName("Should keep events in the outbox when Redis is unavailable")
+    void shouldKeepEventsWhenPublishFails() {
+        // Given
+        when(outboxEventRepository.tryLockBucket(EventOutbox.LOCK_SPACE, 3)).thenReturn(true);
+        when(outboxEventRepository.lockBatch(3, 16, 200)).thenReturn(List.of(
+                OutboxEvent.builder().id(1L).channel("im:reactions").payload("{}").build()));
+        doThrow(new IllegalStateException("Redis down")).when(eventPublisher).publishAll(anyList());
+
+        // When/Then
+        assertThatThrownBy(() -> outbox.relayBatch(3)).isInstanceOf(IllegalStateException.class);
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    @DisplayName("Should leave a bucket alone while another relay publishes it")
+    void shouldSkipBucketHeldByAnotherRelay() {
+        // Given
+        when(outboxEventRepository.tryLockBucket(EventOutbox.LOCK_SPACE, 3)).thenReturn(false);
+
+        // When
+        int relayed = outbox.relayBatch(3);
+
+        // Then - publishing it too could reorder the bucket's conversations
+        assertThat(relayed).isZero();
+        verify(outboxEventRepository, never()).lockBatch(anyInt(), anyInt(), anyInt());
+        verifyNoInteractions(eventPublisher);
+    }
+}
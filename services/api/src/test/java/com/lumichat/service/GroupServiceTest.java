@@ -48,6 +48,9 @@ class GroupServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private ParticipantChangePublisher participantChangePublisher;
+
     @InjectMocks
     private GroupService groupService;
 
@@ -328,6 +331,7 @@ class GroupServiceTest {
             // Then
             verify(groupMemberRepository).deleteAllByGroupId(100L);
             verify(groupRepository).delete(testGroup);
+            verify(participantChangePublisher).groupMembersChanged(100L);
         }
 
         @Test
@@ -441,6 +445,7 @@ class GroupServiceTest {
 
             // Then
             verify(groupMemberRepository).delete(regularMember);
+            verify(participantChangePublisher).groupMembersChanged(100L);
         }
 
         @Test
@@ -548,6 +553,7 @@ class GroupServiceTest {
 
             // Then
             verify(groupMemberRepository).delete(regularMember);
+            verify(participantChangePublisher).groupMembersChanged(100L);
         }
 
         @Test
@@ -0,0 +1,76 @@
+package com.lumichat.service;
+
+import com.lumichat.entity.Conversation;
+import com.lumichat.entity.UserConversation;
+import com.lumichat.repository.ConversationRepository;
+import com.lumichat.repository.UserConversationRepository;
+import com.lumichat.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MessageContextCache Tests")
+class MessageContextCacheTest {
+
+    @Mock
+    private UserConversationRepository userConversationRepository;
+
+    @Mock
+    private ConversationRepository conversationRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private MessageContextCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new MessageContextCache(userConversationRepository, conversationRepository, userRepository, 60000, 1000);
+    }
+
+    @Test
+    @DisplayName("Should cache confirmed members and keep checking non-members")
+    void shouldCacheConfirmedMembersOnly() {
+        // Given
+        when(userConversationRepository.findByUserIdAndConversationId(1L, 100L))
+                .thenReturn(Optional.of(new UserConversation()));
+        when(userConversationRepository.findByUserIdAndConversationId(2L, 100L))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(new UserConversation()));
+
+        // When/Then
+        assertThat(cache.isMember(1L, 100L)).isTrue();
+        assertThat(cache.isMember(1L, 100L)).isTrue();
+        assertThat(cache.isMember(2L, 100L)).isFalse();
+        // Joining needs no eviction: a miss goes back to the database
+        assertThat(cache.isMember(2L, 100L)).isTrue();
+        verify(userConversationRepository, times(1)).findByUserIdAndConversationId(1L, 100L);
+    }
+
+    @Test
+    @DisplayName("Should reload participants after the conversation is evicted")
+    void shouldReloadParticipantsAfterEviction() {
+        // Given
+        when(conversationRepository.findById(100L))
+                .thenReturn(Optional.of(Conversation.builder().id(100L).participantIds(new Long[]{1L, 2L}).build()))
+                .thenReturn(Optional.of(Conversation.builder().id(100L).participantIds(new Long[]{1L, 2L, 3L}).build()));
+        assertThat(cache.getParticipantIds(100L)).containsExactly(1L, 2L);
+        assertThat(cache.getParticipantIds(100L)).containsExactly(1L, 2L);
+
+        // When
+        cache.evictConversation(100L);
+
+        // Then
+        assertThat(cache.getParticipantIds(100L)).containsExactly(1L, 2L, 3L);
+        verify(conversationRepository, times(2)).findById(100L);
+    }
+}
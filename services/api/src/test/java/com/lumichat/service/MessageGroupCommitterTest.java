@@ -0,0 +1,152 @@
+package com.lumichat.service;
+
+import com.lumichat.dto.request.SendMessageRequest;
+import com.lumichat.dto.response.MessageResponse;
+import com.lumichat.exception.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MessageGroupCommitter Tests")
+class MessageGroupCommitterTest {
+
+    @Mock
+    private MessageService messageService;
+
+    private MessageGroupCommitter committer;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (committer != null) {
+            committer.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Should call sendMessage directly when disabled")
+    void shouldSendDirectlyWhenDisabled() {
+        // Given
+        committer = new MessageGroupCommitter(messageService, false, 5, 200, 10000, 20000);
+        committer.start();
+        SendMessageRequest request = new SendMessageRequest();
+        MessageResponse response = MessageResponse.builder().id(1L).build();
+        when(messageService.sendMessage(1L, "d1", request, MessageService.Origin.websocket)).thenReturn(response);
+
+        // When
+        MessageResponse result = committer.send(1L, "d1", request, MessageService.Origin.websocket);
+
+        // Then
+        assertThat(result).isSameAs(response);
+        verify(messageService, never()).sendMessages(anyList());
+    }
+
+    @Test
+    @DisplayName("Should commit sends from one window together and fail only rejected ones")
+    void shouldCommitWindowTogether() {
+        // Given
+        committer = new MessageGroupCommitter(messageService, true, 200, 2, 10000, 20000);
+        committer.start();
+        MessageResponse response = MessageResponse.builder().id(1L).build();
+        when(messageService.sendMessages(anyList())).thenAnswer(inv -> {
+            List<MessageService.SendCommand> commands = inv.getArgument(0);
+            return commands.stream()
+                    .map(command -> command.userId() == 1L
+                            ? new MessageService.SendOutcome(response, null)
+                            : new MessageService.SendOutcome(null, new NotFoundException("Conversation not found")))
+                    .toList();
+        });
+
+        // When
+        CompletableFuture<MessageResponse> accepted = CompletableFuture.supplyAsync(() ->
+                committer.send(1L, "d1", new SendMessageRequest(), MessageService.Origin.websocket));
+        CompletableFuture<MessageResponse> rejected = CompletableFuture.supplyAsync(() ->
+                committer.send(2L, "d2", new SendMessageRequest(), MessageService.Origin.websocket));
+
+        // Then
+        assertThat(accepted.join()).isSameAs(response);
+        assertThatThrownBy(rejected::join).hasCauseInstanceOf(NotFoundException.class);
+        verify(messageService, times(1)).sendMessages(argThat(commands -> commands.size() == 2));
+        verify(messageService, never()).sendMessage(anyLong(), anyString(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should retry messages one by one when the batch fails")
+    void shouldRetryIndividuallyWhenBatchFails() {
+        // Given
+        committer = new MessageGroupCommitter(messageService, true, 5, 200, 10000, 20000);
+        committer.start();
+        SendMessageRequest request = new SendMessageRequest();
+        MessageResponse response = MessageResponse.builder().id(1L).build();
+        when(messageService.sendMessages(anyList())).thenThrow(new IllegalStateException("deadlock"));
+        when(messageService.sendMessage(1L, "d1", request, MessageService.Origin.websocket)).thenReturn(response);
+
+        // When
+        MessageResponse result = committer.send(1L, "d1", request, MessageService.Origin.websocket);
+
+        // Then
+        assertThat(result).isSameAs(response);
+    }
+
+    @Test
+    @DisplayName("Should refuse a commit wait that outlasts the caller's read timeout")
+    void shouldRejectWaitLongerThanCallerTimeout() {
+        assertThatThrownBy(() -> new MessageGroupCommitter(messageService, true, 5, 200, 10000, 5000))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should send directly once stopped instead of queueing behind the drained queue")
+    void shouldSendDirectlyAfterStop() throws InterruptedException {
+        // Given
+        committer = new MessageGroupCommitter(messageService, true, 5, 200, 10000, 20000);
+        committer.start();
+        committer.stop();
+        SendMessageRequest request = new SendMessageRequest();
+        MessageResponse response = MessageResponse.builder().id(1L).build();
+        when(messageService.sendMessage(1L, "d1", request, MessageService.Origin.websocket)).thenReturn(response);
+
+        // When
+        MessageResponse result = committer.send(1L, "d1", request, MessageService.Origin.websocket);
+
+        // Then
+        assertThat(result).isSameAs(response);
+        verify(messageService, never()).sendMessages(anyList());
+    }
+
+    @Test
+    @DisplayName("Should give up waiting and withdraw the message when the batch takes too long")
+    void shouldTimeOutWaitingForCommit() {
+        // Given
+        committer = new MessageGroupCommitter(messageService, true, 5, 1, 50, 20000);
+        committer.start();
+        CountDownLatch release = new CountDownLatch(1);
+        MessageResponse response = MessageResponse.builder().id(1L).build();
+        when(messageService.sendMessages(anyList())).thenAnswer(inv -> {
+            release.await();
+            return List.of(new MessageService.SendOutcome(response, null));
+        });
+        CompletableFuture<MessageResponse> blocking = CompletableFuture.supplyAsync(() ->
+                committer.send(1L, "d1", new SendMessageRequest(), MessageService.Origin.websocket));
+        verify(messageService, timeout(1000)).sendMessages(anyList());
+
+        // When/Then
+        assertThatThrownBy(() -> committer.send(2L, "d2", new SendMessageRequest(), MessageService.Origin.websocket))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("was not sent");
+        release.countDown();
+        assertThatThrownBy(blocking::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,98 @@
+package com.lumichat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MessageRouter Tests")
+class MessageRouterTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    private MessageRouter messageRouter;
+
+    @BeforeEach
+    void setUp() {
+        messageRouter = new MessageRouter(redisTemplate, "node");
+    }
+
+    @Test
+    @DisplayName("Should publish only to nodes holding recipients")
+    void shouldRouteToNodesHoldingRecipients() {
+        // Given: user 1 on node-a, user 2 on node-a and node-b, user 3 offline
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(List.of(List.of("node-a"), List.of("node-a", "node-b"), List.of()));
+
+        // When
+        List<MessageRouter.Route> routes = messageRouter.route(List.of(1L, 2L, 3L));
+
+        // Then
+        assertThat(routes).containsExactly(
+                new MessageRouter.Route("im:node:node-a", List.of(1L, 2L), List.of(3L)),
+                new MessageRouter.Route("im:node:node-b", List.of(2L), List.of()));
+    }
+
+    @Test
+    @DisplayName("Should hand offline recipients to a live node when nobody is connected")
+    void shouldHandOfflineRecipientsToLiveNode() {
+        // Given
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(List.of(List.of(), List.of()));
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        when(setOperations.randomMember("im:nodes")).thenReturn("node-c");
+
+        // When
+        List<MessageRouter.Route> routes = messageRouter.route(List.of(1L, 2L));
+
+        // Then
+        assertThat(routes).containsExactly(
+                new MessageRouter.Route("im:node:node-c", List.of(), List.of(1L, 2L)));
+    }
+
+    @Test
+    @DisplayName("Should fall back to broadcast when the directory lookup fails")
+    void shouldFallBackToBroadcastOnFailure() {
+        // Given
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenThrow(new RuntimeException("Redis down"));
+
+        // When
+        List<MessageRouter.Route> routes = messageRouter.route(List.of(1L, 2L));
+
+        // Then
+        assertThat(routes).hasSize(1);
+        assertThat(routes.get(0).isBroadcast()).isTrue();
+        assertThat(routes.get(0).channel()).isEqualTo("im:messages");
+    }
+
+    @Test
+    @DisplayName("Should broadcast when node routing is disabled")
+    void shouldBroadcastWhenDisabled() {
+        // Given
+        MessageRouter broadcastRouter = new MessageRouter(redisTemplate, "broadcast");
+
+        // When
+        List<MessageRouter.Route> routes = broadcastRouter.route(List.of(1L, 2L));
+
+        // Then
+        assertThat(routes).extracting(MessageRouter.Route::channel).containsExactly("im:messages");
+        verifyNoInteractions(redisTemplate);
+    }
+}
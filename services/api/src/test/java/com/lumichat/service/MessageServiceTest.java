@@ -25,9 +25,8 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.redis.core.StringRedisTemplate;
 
 import java.time.Clock;
 import java.time.Instant;
@@ -64,7 +63,7 @@ class MessageServiceTest {
     private UserRepository userRepository;
 
     @Mock
-    private StringRedisTemplate redisTemplate;
+    private EventOutbox eventOutbox;
 
     @Mock
     private ObjectMapper objectMapper;
@@ -92,7 +91,8 @@ class MessageServiceTest {
                 conversationRepository,
                 userConversationRepository,
                 userRepository,
-                redisTemplate,
+                new MessageContextCache(userConversationRepository, conversationRepository, userRepository, 60000, 1000),
+                eventOutbox,
                 objectMapper,
                 fixedClock
         );
@@ -149,8 +149,8 @@ class MessageServiceTest {
             // Given
             when(userConversationRepository.findByUserIdAndConversationId(1L, 100L))
                     .thenReturn(Optional.of(userConversation));
-            when(messageRepository.findByConversationIdAfterClearedAt(eq(100L), isNull(), any(Pageable.class)))
-                    .thenReturn(new PageImpl<>(Arrays.asList(testMessage)));
+            when(messageRepository.findHistoryPage(eq(100L), eq(Long.MAX_VALUE), eq(0L), any(Pageable.class)))
+                    .thenReturn(new SliceImpl<>(Arrays.asList(testMessage)));
 
             // When
             List<MessageResponse> results = messageService.getMessages(1L, 100L, null, 20);
@@ -158,6 +158,7 @@ class MessageServiceTest {
             // Then
             assertThat(results).hasSize(1);
             assertThat(results.get(0).getMsgId()).isEqualTo("msg-123456");
+            verify(messageRepository, never()).findLastIdAtOrBefore(any(), any());
         }
 
         @Test
@@ -166,15 +167,34 @@ class MessageServiceTest {
             // Given
             when(userConversationRepository.findByUserIdAndConversationId(1L, 100L))
                     .thenReturn(Optional.of(userConversation));
-            when(messageRepository.findBeforeIdAfterClearedAt(eq(100L), eq(500L), isNull(), any(Pageable.class)))
-                    .thenReturn(new PageImpl<>(Collections.emptyList()));
+            when(messageRepository.findHistoryPage(eq(100L), eq(500L), eq(0L), any(Pageable.class)))
+                    .thenReturn(new SliceImpl<>(Collections.emptyList()));
 
             // When
             List<MessageResponse> results = messageService.getMessages(1L, 100L, 500L, 20);
 
             // Then
             assertThat(results).isEmpty();
-            verify(messageRepository).findBeforeIdAfterClearedAt(eq(100L), eq(500L), isNull(), any(Pageable.class));
+            verify(messageRepository).findHistoryPage(eq(100L), eq(500L), eq(0L), any(Pageable.class));
+        }
+
+        @Test
+        @DisplayName("Should hide messages up to the cleared-at cutoff")
+        void shouldBoundHistoryByClearedAt() {
+            // Given
+            LocalDateTime clearedAt = LocalDateTime.of(2025, 1, 15, 10, 0);
+            userConversation.setClearedAt(clearedAt);
+            when(userConversationRepository.findByUserIdAndConversationId(1L, 100L))
+                    .thenReturn(Optional.of(userConversation));
+            when(messageRepository.findLastIdAtOrBefore(100L, clearedAt)).thenReturn(Optional.of(300L));
+            when(messageRepository.findHistoryPage(eq(100L), eq(Long.MAX_VALUE), eq(300L), any(Pageable.class)))
+                    .thenReturn(new SliceImpl<>(Arrays.asList(testMessage)));
+
+            // When
+            List<MessageResponse> results = messageService.getMessages(1L, 100L, null, 20);
+
+            // Then
+            assertThat(results).hasSize(1);
         }
 
         @Test
@@ -214,7 +234,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             // When
             MessageResponse result = messageService.sendMessage(1L, "device-123", request);
@@ -224,8 +245,70 @@ class MessageServiceTest {
             assertThat(result.getContent()).isEqualTo("Hello World");
 
             verify(messageRepository).save(any(Message.class));
-            verify(conversationRepository).save(any(Conversation.class));
-            verify(userConversationRepository).incrementUnreadForOthers(100L, 1L);
+            verify(conversationRepository).recordMessage(eq(100L), eq(501L), any(LocalDateTime.class), eq(1L), eq(1));
+            verify(conversationRepository, never()).save(any(Conversation.class));
+        }
+
+        @Test
+        @DisplayName("Should serve repeat sends from the context cache")
+        void shouldServeRepeatSendsFromContextCache() {
+            // Given
+            SendMessageRequest request = new SendMessageRequest();
+            request.setConversationId(100L);
+            request.setMsgType("text");
+            request.setContent("Hello World");
+
+            when(userConversationRepository.findByUserIdAndConversationId(1L, 100L))
+                    .thenReturn(Optional.of(userConversation));
+            when(conversationRepository.findById(100L)).thenReturn(Optional.of(conversation));
+            when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+            when(messageRepository.save(any(Message.class))).thenAnswer(inv -> {
+                Message m = inv.getArgument(0);
+                m.setId(501L);
+                m.setServerCreatedAt(LocalDateTime.now());
+                return m;
+            });
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+
+            // When
+            messageService.sendMessage(1L, "device-123", request);
+            MessageResponse result = messageService.sendMessage(1L, "device-123", request);
+
+            // Then
+            assertThat(result.getSender().getNickname()).isEqualTo("TestUser");
+            verify(userConversationRepository, times(1)).findByUserIdAndConversationId(1L, 100L);
+            verify(conversationRepository, times(1)).findById(100L);
+            verify(userRepository, times(1)).findById(1L);
+            verify(conversationRepository, times(2)).recordMessage(eq(100L), eq(501L), any(LocalDateTime.class), eq(1L), eq(1));
+        }
+
+        @Test
+        @DisplayName("Should return the original message when a send is retried with the same client id")
+        void shouldReturnOriginalForRetriedClientMsgId() {
+            // Given
+            SendMessageRequest request = new SendMessageRequest();
+            request.setConversationId(100L);
+            request.setMsgType("text");
+            request.setContent("Hello World");
+            request.setClientMsgId("client-1");
+
+            when(userConversationRepository.findByUserIdAndConversationId(1L, 100L))
+                    .thenReturn(Optional.of(userConversation));
+            when(conversationRepository.findById(100L)).thenReturn(Optional.of(conversation));
+            when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+            when(messageRepository.findBySenderIdAndClientMsgId(1L, "client-1")).thenReturn(Optional.of(testMessage));
+
+            // When
+            MessageResponse result = messageService.sendMessage(1L, "device-123", request);
+
+            // Then
+            assertThat(result.getMsgId()).isEqualTo(testMessage.getMsgId());
+            verify(messageRepository, never()).save(any(Message.class));
+            verify(conversationRepository, never()).recordMessage(any(), any(), any(), any(), anyInt());
+            verifyNoInteractions(eventOutbox);
         }
 
         @Test
@@ -248,7 +331,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             // When
             MessageResponse result = messageService.sendMessage(1L, "device-123", request);
@@ -284,7 +368,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             // When
             messageService.sendMessage(1L, "device-123", request);
@@ -317,7 +402,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             // When
             messageService.sendMessage(1L, "device-123", request);
@@ -350,7 +436,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             // When
             messageService.sendMessage(1L, "device-123", request);
@@ -402,6 +489,57 @@ class MessageServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("SendMessages Tests")
+    class SendMessagesTests {
+
+        @Test
+        @DisplayName("Should insert a batch together and record each sender once")
+        void shouldInsertBatchAndRecordOncePerSender() {
+            // Given
+            SendMessageRequest first = new SendMessageRequest();
+            first.setConversationId(100L);
+            first.setMsgType("text");
+            first.setContent("One");
+            SendMessageRequest invalid = new SendMessageRequest();
+            invalid.setConversationId(100L);
+            invalid.setMsgType("invalid_type");
+            SendMessageRequest second = new SendMessageRequest();
+            second.setConversationId(100L);
+            second.setMsgType("text");
+            second.setContent("Two");
+
+            when(userConversationRepository.findByUserIdAndConversationId(1L, 100L))
+                    .thenReturn(Optional.of(userConversation));
+            when(conversationRepository.findById(100L)).thenReturn(Optional.of(conversation));
+            when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+            when(messageRepository.saveAll(anyList())).thenAnswer(inv -> {
+                List<Message> messages = inv.getArgument(0);
+                for (int i = 0; i < messages.size(); i++) {
+                    messages.get(i).setId(601L + i);
+                    messages.get(i).setServerCreatedAt(LocalDateTime.now());
+                }
+                return messages;
+            });
+
+            // When
+            List<MessageService.SendOutcome> outcomes = messageService.sendMessages(List.of(
+                    new MessageService.SendCommand(1L, "device-123", first, MessageService.Origin.websocket),
+                    new MessageService.SendCommand(1L, "device-123", invalid, MessageService.Origin.websocket),
+                    new MessageService.SendCommand(1L, "device-123", second, MessageService.Origin.websocket)));
+
+            // Then
+            assertThat(outcomes).hasSize(3);
+            assertThat(outcomes.get(0).response().getContent()).isEqualTo("One");
+            assertThat(outcomes.get(1).error()).isInstanceOf(BadRequestException.class);
+            assertThat(outcomes.get(2).response().getId()).isEqualTo(602L);
+            verify(messageRepository, never()).save(any(Message.class));
+            verify(conversationRepository).recordMessage(eq(100L), eq(602L), any(LocalDateTime.class), eq(1L), eq(2));
+        }
+    }
+
     @Nested
     @DisplayName("RecallMessage Tests")
     class RecallMessageTests {
@@ -494,7 +632,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(targetConversation);
+            when(conversationRepository.getReferenceById(200L)).thenReturn(targetConversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             // When
             MessageResponse result = messageService.forwardMessage(1L, "device-123", "msg-123456", 200L);
@@ -504,7 +643,7 @@ class MessageServiceTest {
             assertThat(result.getContent()).isEqualTo("Hello World");
 
             verify(messageRepository).save(any(Message.class));
-            verify(userConversationRepository).incrementUnreadForOthers(200L, 1L);
+            verify(conversationRepository).recordMessage(eq(200L), eq(502L), any(LocalDateTime.class), eq(1L), eq(1));
         }
 
         @Test
@@ -582,12 +721,12 @@ class MessageServiceTest {
     }
 
     @Nested
-    @DisplayName("Redis Publishing Tests")
-    class RedisPublishingTests {
+    @DisplayName("Event Publishing Tests")
+    class EventPublishingTests {
 
         @Test
-        @DisplayName("Should publish message to Redis after saving")
-        void shouldPublishToRedisAfterSaving() throws JsonProcessingException {
+        @DisplayName("Should queue message event in the outbox after saving")
+        void shouldQueueEventAfterSaving() throws JsonProcessingException {
             // Given
             SendMessageRequest request = new SendMessageRequest();
             request.setConversationId(100L);
@@ -604,14 +743,15 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
             when(objectMapper.writeValueAsString(any())).thenReturn("{\"test\":\"json\"}");
 
             // When
             messageService.sendMessage(1L, "device-123", request);
 
             // Then
-            verify(redisTemplate).convertAndSend(eq("im:messages"), anyString());
+            verify(eventOutbox).addRouted(anyString(), eq(List.of(1L, 2L)), anyLong());
         }
 
         @Test
@@ -633,7 +773,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             // Capture the map passed to objectMapper
             ArgumentCaptor<Map> mapCaptor = ArgumentCaptor.forClass(Map.class);
@@ -649,11 +790,47 @@ class MessageServiceTest {
             assertThat(capturedEvent.get("senderId")).isEqualTo(1L);
             assertThat(capturedEvent.get("senderDeviceId")).isEqualTo("device-123");
             assertThat(capturedEvent.get("conversationId")).isEqualTo(100L);
+            assertThat(capturedEvent.get("origin")).isEqualTo("rest");
+        }
+
+        @Test
+        @DisplayName("Should tag WebSocket-originated messages with their origin")
+        void shouldTagWebSocketOrigin() throws JsonProcessingException {
+            // Given
+            SendMessageRequest request = new SendMessageRequest();
+            request.setConversationId(100L);
+            request.setMsgType("text");
+            request.setContent("From socket");
+
+            when(userConversationRepository.findByUserIdAndConversationId(1L, 100L))
+                    .thenReturn(Optional.of(userConversation));
+            when(conversationRepository.findById(100L)).thenReturn(Optional.of(conversation));
+            when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+            when(messageRepository.save(any(Message.class))).thenAnswer(inv -> {
+                Message m = inv.getArgument(0);
+                m.setId(502L);
+                m.setServerCreatedAt(LocalDateTime.now());
+                return m;
+            });
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+
+            ArgumentCaptor<Map> mapCaptor = ArgumentCaptor.forClass(Map.class);
+            when(objectMapper.writeValueAsString(mapCaptor.capture())).thenReturn("{\"test\":\"json\"}");
+
+            // When
+            messageService.sendMessage(1L, "device-123", request, MessageService.Origin.websocket);
+
+            // Then
+            verify(eventOutbox, times(1)).addRouted(anyString(), anyList(), anyLong());
+            Map<String, Object> capturedEvent = mapCaptor.getValue();
+            assertThat(capturedEvent.get("origin")).isEqualTo("websocket");
+            assertThat(capturedEvent.get("msgId")).isEqualTo("502");
         }
 
         @Test
-        @DisplayName("Should continue saving message even if Redis publish fails")
-        void shouldContinueWhenRedisPublishFails() throws JsonProcessingException {
+        @DisplayName("Should continue saving message even if its event can't be built")
+        void shouldContinueWhenEventCannotBeBuilt() throws JsonProcessingException {
             // Given
             SendMessageRequest request = new SendMessageRequest();
             request.setConversationId(100L);
@@ -670,10 +847,11 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
-            // Make Redis throw an exception
-            when(objectMapper.writeValueAsString(any())).thenThrow(new RuntimeException("Redis connection failed"));
+            // Make serialization throw an exception
+            when(objectMapper.writeValueAsString(any())).thenThrow(new RuntimeException("Serialization failed"));
 
             // When
             MessageResponse result = messageService.sendMessage(1L, "device-123", request);
@@ -682,6 +860,7 @@ class MessageServiceTest {
             assertThat(result).isNotNull();
             assertThat(result.getContent()).isEqualTo("Hello");
             verify(messageRepository).save(any(Message.class));
+            verify(eventOutbox, never()).addRouted(anyString(), anyList(), anyLong());
         }
 
         @Test
@@ -704,7 +883,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             ArgumentCaptor<Map> mapCaptor = ArgumentCaptor.forClass(Map.class);
             when(objectMapper.writeValueAsString(mapCaptor.capture())).thenReturn("{\"test\":\"json\"}");
@@ -744,7 +924,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             ArgumentCaptor<Map> mapCaptor = ArgumentCaptor.forClass(Map.class);
             when(objectMapper.writeValueAsString(mapCaptor.capture())).thenReturn("{\"test\":\"json\"}");
@@ -779,7 +960,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             // Mock objectMapper.readValue to parse the metadata JSON string to a Map
             ObjectMapper realMapper = new ObjectMapper();
@@ -834,7 +1016,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             ArgumentCaptor<Map> mapCaptor = ArgumentCaptor.forClass(Map.class);
             when(objectMapper.writeValueAsString(mapCaptor.capture())).thenReturn("{\"test\":\"json\"}");
@@ -872,7 +1055,8 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+            when(conversationRepository.getReferenceById(100L)).thenReturn(conversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
 
             // Mock objectMapper.readValue to throw exception for invalid JSON
             when(objectMapper.readValue(eq("invalid-json{"), eq(Object.class)))
@@ -894,8 +1078,8 @@ class MessageServiceTest {
         }
 
         @Test
-        @DisplayName("Should publish to Redis when forwarding message")
-        void shouldPublishToRedisWhenForwarding() throws JsonProcessingException {
+        @DisplayName("Should queue event when forwarding message")
+        void shouldQueueEventWhenForwarding() throws JsonProcessingException {
             // Given
             Conversation targetConversation = Conversation.builder()
                     .id(200L)
@@ -916,14 +1100,15 @@ class MessageServiceTest {
                 m.setServerCreatedAt(LocalDateTime.now());
                 return m;
             });
-            when(conversationRepository.save(any(Conversation.class))).thenReturn(targetConversation);
+            when(conversationRepository.getReferenceById(200L)).thenReturn(targetConversation);
+            when(userRepository.getReferenceById(1L)).thenReturn(testUser);
             when(objectMapper.writeValueAsString(any())).thenReturn("{\"test\":\"json\"}");
 
             // When
             messageService.forwardMessage(1L, "device-123", "msg-123456", 200L);
 
             // Then
-            verify(redisTemplate).convertAndSend(eq("im:messages"), anyString());
+            verify(eventOutbox).addRouted(anyString(), eq(List.of()), anyLong());
         }
     }
 }
@@ -0,0 +1,97 @@
+package com.lumichat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("NodeIdLease Tests")
+class NodeIdLeaseTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private NodeIdLease lease;
+
+    @AfterEach
+    void tearDown() {
+        if (lease != null) {
+            lease.release();
+        }
+    }
+
+    @Test
+    @DisplayName("Should use a configured node id without touching Redis")
+    void shouldUseConfiguredNodeId() {
+        // When
+        lease = new NodeIdLease(redisTemplate, 7, 30000);
+
+        // Then
+        assertThat(lease.getNodeId()).isEqualTo(7L);
+        assertThatCode(lease::checkHeld).doesNotThrowAnyException();
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    @DisplayName("Should claim the lowest node id no other instance holds")
+    void shouldClaimLowestFreeNodeId() {
+        // Given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("api:node-id:0"), anyString(), any(Duration.class))).thenReturn(false);
+        when(valueOperations.setIfAbsent(eq("api:node-id:1"), anyString(), any(Duration.class))).thenReturn(true);
+
+        // When
+        lease = new NodeIdLease(redisTemplate, -1, 30000);
+
+        // Then
+        assertThat(lease.getNodeId()).isEqualTo(1L);
+    }
+
+    @Test
+    @DisplayName("Should refuse to start when every node id is leased")
+    void shouldFailWhenAllNodeIdsLeased() {
+        // Given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+
+        // When/Then
+        assertThatThrownBy(() -> new NodeIdLease(redisTemplate, -1, 30000))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("Should stop issuing ids once another instance holds the lease")
+    @SuppressWarnings("unchecked")
+    void shouldStopIssuingWhenLeaseLost() {
+        // Given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("api:node-id:0"), anyString(), any(Duration.class))).thenReturn(true);
+        lease = new NodeIdLease(redisTemplate, -1, 30000);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(Clock.systemUTC(), lease);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(0L);
+
+        // When
+        lease.renew();
+
+        // Then
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+    }
+}
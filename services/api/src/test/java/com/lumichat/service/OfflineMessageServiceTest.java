@@ -16,6 +16,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Pageable;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -45,6 +46,9 @@ class OfflineMessageServiceTest {
     @Mock
     private ConversationRepository conversationRepository;
 
+    @Mock
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+
     @InjectMocks
     private OfflineMessageService offlineMessageService;
 
@@ -202,6 +206,145 @@ class OfflineMessageServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("QueueMessageForUsers Tests")
+    class QueueMessageForUsersTests {
+
+        @Test
+        @DisplayName("Should queue for all users with a single insert")
+        void shouldQueueWithSingleInsert() {
+            // Given
+            when(offlineMessageRepository.queueForUsers(eq(500L), eq(List.of(1L, 2L, 3L)), any(LocalDateTime.class)))
+                    .thenReturn(3);
+
+            // When
+            int queued = offlineMessageService.queueMessageForUsers(500L, List.of(1L, 2L, 3L));
+
+            // Then
+            assertThat(queued).isEqualTo(3);
+            verify(offlineMessageRepository, never()).save(any());
+            verifyNoInteractions(userRepository, messageRepository, conversationRepository);
+        }
+
+        @Test
+        @DisplayName("Should skip the insert when there are no users")
+        void shouldSkipEmptyBatch() {
+            // When
+            int queued = offlineMessageService.queueMessageForUsers(500L, List.of());
+
+            // Then
+            assertThat(queued).isZero();
+            verifyNoInteractions(offlineMessageRepository);
+        }
+    }
+
+    @Nested
+    @DisplayName("GetInbox Tests")
+    class GetInboxTests {
+
+        private Message messageWithId(long id) {
+            return Message.builder()
+                    .id(id)
+                    .msgId("msg-" + id)
+                    .conversation(conversation)
+                    .sender(otherUser)
+                    .msgType(Message.MessageType.text)
+                    .content("Hello " + id)
+                    .serverCreatedAt(LocalDateTime.now())
+                    .build();
+        }
+
+        @Test
+        @DisplayName("Should page after an explicit cursor and report the next cursor")
+        void shouldPageAfterExplicitCursor() {
+            // Given - one row more than the limit means another page follows
+            when(snowflakeIdGenerator.upperBoundOlderThan(anyLong())).thenReturn(10_000L);
+            when(messageRepository.findInboxIdsAfter(1L, 500L, 10_000L, false, 3))
+                    .thenReturn(List.of(501L, 502L, 503L));
+            when(messageRepository.findWithSenderByIdIn(List.of(501L, 502L)))
+                    .thenReturn(List.of(messageWithId(501L), messageWithId(502L)));
+
+            // When
+            OfflineMessageService.InboxPage page = offlineMessageService.getInbox(1L, "device-123", 500L, 2);
+
+            // Then
+            assertThat(page.messages()).extracting(MessageResponse::getId).containsExactly(501L, 502L);
+            assertThat(page.nextCursor()).isEqualTo(502L);
+            assertThat(page.hasMore()).isTrue();
+            verifyNoInteractions(deviceSyncStatusRepository);
+        }
+
+        @Test
+        @DisplayName("Should resume from the device's last synced message")
+        void shouldResumeFromDeviceCursor() {
+            // Given
+            when(deviceSyncStatusRepository.findByUserIdAndDeviceId(1L, "device-123"))
+                    .thenReturn(Optional.of(syncStatus));
+            when(snowflakeIdGenerator.upperBoundOlderThan(anyLong())).thenReturn(10_000L);
+            when(messageRepository.findInboxIdsAfter(1L, 400L, 10_000L, false, 101))
+                    .thenReturn(List.of(450L));
+            when(messageRepository.findWithSenderByIdIn(List.of(450L)))
+                    .thenReturn(List.of(messageWithId(450L)));
+
+            // When
+            OfflineMessageService.InboxPage page = offlineMessageService.getInbox(1L, "device-123", null, 100);
+
+            // Then
+            assertThat(page.messages()).hasSize(1);
+            assertThat(page.nextCursor()).isEqualTo(450L);
+            assertThat(page.hasMore()).isFalse();
+        }
+
+        @Test
+        @DisplayName("Should fall back to unread messages for a device that never synced")
+        void shouldFallBackToUnreadForNewDevice() {
+            // Given
+            when(deviceSyncStatusRepository.findByUserIdAndDeviceId(1L, "device-new"))
+                    .thenReturn(Optional.empty());
+            when(snowflakeIdGenerator.upperBoundOlderThan(anyLong())).thenReturn(10_000L);
+            when(messageRepository.findInboxIdsAfter(1L, 0L, 10_000L, true, 101))
+                    .thenReturn(Collections.emptyList());
+
+            // When
+            OfflineMessageService.InboxPage page = offlineMessageService.getInbox(1L, "device-new", null, 100);
+
+            // Then
+            assertThat(page.messages()).isEmpty();
+            assertThat(page.nextCursor()).isNull();
+            assertThat(page.hasMore()).isFalse();
+        }
+
+        @Test
+        @DisplayName("Should not skip a lower id that commits after a higher one")
+        void shouldNotSkipOutOfOrderCommit() {
+            // Given - 620 is committed while 610, issued by a node with a slower clock, is still in flight
+            List<Long> committed = new ArrayList<>(List.of(600L, 620L));
+            when(messageRepository.findInboxIdsAfter(eq(1L), anyLong(), anyLong(), eq(false), anyInt()))
+                    .thenAnswer(inv -> {
+                        long after = inv.getArgument(1);
+                        long before = inv.getArgument(2);
+                        return committed.stream()
+                                .filter(id -> id > after && id < before)
+                                .sorted()
+                                .toList();
+                    });
+            when(messageRepository.findWithSenderByIdIn(anyList()))
+                    .thenAnswer(inv -> inv.<List<Long>>getArgument(0).stream().map(this::messageWithId).toList());
+            when(snowflakeIdGenerator.upperBoundOlderThan(anyLong())).thenReturn(615L, 700L);
+
+            // When - sync while 620 is newer than the safety lag
+            OfflineMessageService.InboxPage first = offlineMessageService.getInbox(1L, "device-123", 500L, 100);
+            committed.add(610L);
+            OfflineMessageService.InboxPage second = offlineMessageService.getInbox(
+                    1L, "device-123", first.nextCursor(), 100);
+
+            // Then
+            assertThat(first.messages()).extracting(MessageResponse::getId).containsExactly(600L);
+            assertThat(first.nextCursor()).isEqualTo(600L);
+            assertThat(second.messages()).extracting(MessageResponse::getId).containsExactly(610L, 620L);
+        }
+    }
+
     @Nested
     @DisplayName("GetPendingMessages Tests")
     class GetPendingMessagesTests {
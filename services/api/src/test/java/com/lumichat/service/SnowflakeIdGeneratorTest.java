@@ -0,0 +1,75 @@
+package com.lumichat.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("SnowflakeIdGenerator Tests")
+class SnowflakeIdGeneratorTest {
+
+    private static final Clock FIXED = Clock.fixed(Instant.parse("2025-01-15T10:00:00Z"), ZoneId.of("UTC"));
+
+    @Test
+    @DisplayName("Should encode time, node and sequence within 53 bits")
+    void shouldEncodeLayout() {
+        // Given
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(FIXED, 3);
+
+        // When
+        long first = generator.nextId();
+        long second = generator.nextId();
+
+        // Then
+        long millis = FIXED.millis() - SnowflakeIdGenerator.EPOCH;
+        int shift = SnowflakeIdGenerator.NODE_BITS + SnowflakeIdGenerator.SEQUENCE_BITS;
+        assertThat(first >>> shift).isEqualTo(millis);
+        assertThat((first >>> SnowflakeIdGenerator.SEQUENCE_BITS) & 31).isEqualTo(3L);
+        assertThat(second).isEqualTo(first + 1);
+        assertThat(first).isLessThan(1L << 53);
+    }
+
+    @Test
+    @DisplayName("Should stay increasing when a millisecond's sequence runs out")
+    void shouldBorrowNextMillisecondOnOverflow() {
+        // Given
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(FIXED, 0);
+        long previous = generator.nextId();
+
+        // When/Then
+        for (int i = 0; i < 1000; i++) {
+            long next = generator.nextId();
+            assertThat(next).isGreaterThan(previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    @DisplayName("Should bound ids by age across every node")
+    void shouldBoundIdsOlderThanLag() {
+        // Given
+        Clock later = Clock.offset(FIXED, Duration.ofSeconds(5));
+        long issuedAtFixed = new SnowflakeIdGenerator(FIXED, 31).nextId();
+        long issuedAtLater = new SnowflakeIdGenerator(later, 0).nextId();
+
+        // When
+        long bound = new SnowflakeIdGenerator(later, 0).upperBoundOlderThan(5000);
+
+        // Then
+        assertThat(issuedAtFixed).isLessThan(bound);
+        assertThat(issuedAtLater).isGreaterThanOrEqualTo(bound);
+    }
+
+    @Test
+    @DisplayName("Should reject node ids that don't fit the layout")
+    void shouldRejectOutOfRangeNodeId() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(FIXED, 32))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
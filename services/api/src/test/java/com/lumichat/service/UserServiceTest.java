@@ -39,6 +39,9 @@ class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private MessageContextCache messageContextCache;
+
     @InjectMocks
     private UserService userService;
 
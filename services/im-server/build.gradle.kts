@@ -31,8 +31,15 @@ dependencies {
     // Netty for high-performance networking
     implementation("io.netty:netty-all:4.1.116.Final")
 
+    // Pooled HTTP client for calls to the API server
+    implementation("org.apache.httpcomponents.client5:httpclient5")
+
+    // In-process caching
+    implementation("com.github.ben-manes.caffeine:caffeine")
+
     // JSON processing
     implementation("com.fasterxml.jackson.core:jackson-databind")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-cbor")
 
     // JWT for token validation (same library as API server)
     implementation("io.jsonwebtoken:jjwt-api:0.12.6")
@@ -25,8 +25,9 @@ public class ApiClient {
 
     public ApiClient(
             ObjectMapper objectMapper,
+            ApiHttpTransport httpTransport,
             @Value("${api.base-url:http://localhost:8080}") String apiBaseUrl) {
-        this.restTemplate = new RestTemplate();
+        this.restTemplate = httpTransport.restTemplate();
         this.objectMapper = objectMapper;
         this.apiBaseUrl = apiBaseUrl;
     }
@@ -236,6 +237,39 @@ public class ApiClient {
         }
     }
 
+    /**
+     * Queue a message for several offline users in one request.
+     */
+    public QueueMessageResult queueOfflineMessages(Long messageId, List<Long> targetUserIds) {
+        try {
+            String url = apiBaseUrl + "/sync/queue/batch";
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.set("X-Internal-Service", "im-server");
+
+            Map<String, Object> body = Map.of(
+                    "messageId", messageId,
+                    "targetUserIds", targetUserIds);
+
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
+
+            ResponseEntity<String> response = restTemplate.exchange(
+                    url, HttpMethod.POST, entity, String.class);
+
+            if (response.getStatusCode().is2xxSuccessful()) {
+                return new QueueMessageResult(true, null);
+            } else {
+                JsonNode root = objectMapper.readTree(response.getBody());
+                String error = root.path("message").asText("Unknown error");
+                return new QueueMessageResult(false, error);
+            }
+        } catch (Exception e) {
+            log.error("Error queuing offline message {} for {} users", messageId, targetUserIds.size(), e);
+            return new QueueMessageResult(false, e.getMessage());
+        }
+    }
+
     /**
      * Get pending offline messages for a user/device.
      */
@@ -0,0 +1,129 @@
+package com.lumichat.im.client;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTP transport used by {@link ApiClient} to reach the API server.
+ *
+ * Two protocols are supported via {@code api.http.protocol}:
+ * <ul>
+ *   <li>{@code http1} (default): Apache HttpClient with a bounded keep-alive
+ *       connection pool, per-route limits and idle eviction.</li>
+ *   <li>{@code h2c}: JDK HttpClient negotiating HTTP/2 cleartext, so all calls
+ *       are multiplexed over a few connections. The API server must have
+ *       HTTP/2 enabled for the upgrade to succeed; otherwise HTTP/1.1 is used.</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class ApiHttpTransport {
+
+    private final String protocol;
+    private final RestTemplate restTemplate;
+    private final CloseableHttpClient pooledClient;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final HttpClient jdkClient;
+
+    public ApiHttpTransport(
+            @Value("${api.http.protocol:http1}") String protocol,
+            @Value("${api.http.max-connections:200}") int maxConnections,
+            @Value("${api.http.max-connections-per-route:100}") int maxConnectionsPerRoute,
+            @Value("${api.http.connect-timeout:2000}") long connectTimeoutMs,
+            @Value("${api.http.read-timeout:5000}") long readTimeoutMs,
+            @Value("${api.http.acquire-timeout:1000}") long acquireTimeoutMs,
+            @Value("${api.http.idle-eviction:30000}") long idleEvictionMs) {
+        this.protocol = protocol;
+
+        if ("h2c".equalsIgnoreCase(protocol)) {
+            this.connectionManager = null;
+            this.pooledClient = null;
+            this.jdkClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                    .build();
+
+            JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(jdkClient);
+            factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+            this.restTemplate = new RestTemplate(factory);
+        } else {
+            this.jdkClient = null;
+            this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(maxConnections)
+                    .setMaxConnPerRoute(maxConnectionsPerRoute)
+                    .setDefaultConnectionConfig(ConnectionConfig.custom()
+                            .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                            .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                            .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                            .build())
+                    .build();
+            this.pooledClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectionRequestTimeout(Timeout.ofMilliseconds(acquireTimeoutMs))
+                            .build())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(TimeValue.ofMilliseconds(idleEvictionMs))
+                    .build();
+            this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(pooledClient));
+        }
+
+        log.info("API HTTP transport initialized: protocol={}, maxConnections={}, maxPerRoute={}",
+                this.protocol, maxConnections, maxConnectionsPerRoute);
+    }
+
+    public RestTemplate restTemplate() {
+        return restTemplate;
+    }
+
+    /**
+     * Connection pool statistics for the health endpoint.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("protocol", protocol);
+        if (connectionManager != null) {
+            PoolStats total = connectionManager.getTotalStats();
+            stats.put("leased", total.getLeased());
+            stats.put("available", total.getAvailable());
+            stats.put("pending", total.getPending());
+            stats.put("max", total.getMax());
+            stats.put("maxPerRoute", connectionManager.getDefaultMaxPerRoute());
+            stats.put("routes", connectionManager.getRoutes().size());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            if (pooledClient != null) {
+                pooledClient.close();
+            }
+            if (jdkClient != null) {
+                jdkClient.close();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to close API HTTP transport: {}", e.getMessage());
+        }
+    }
+}
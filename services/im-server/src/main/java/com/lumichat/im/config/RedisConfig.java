@@ -3,21 +3,33 @@ package com.lumichat.im.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lumichat.im.client.ApiClient;
 import com.lumichat.im.protocol.Packet;
+import com.lumichat.im.protocol.PacketCodec;
 import com.lumichat.im.protocol.ProtocolType;
+import com.lumichat.im.service.DeliveryDeduplicator;
 import com.lumichat.im.service.MessageProcessor;
+import com.lumichat.im.service.ParticipantCache;
+import com.lumichat.im.service.PresenceService;
+import com.lumichat.im.service.TypingCoalescer;
+import com.lumichat.im.session.ClusterSessionDirectory;
 import com.lumichat.im.session.SessionManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.PatternTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Configuration
@@ -28,18 +40,39 @@ public class RedisConfig {
     private final MessageProcessor messageProcessor;
     private final ObjectMapper objectMapper;
     private final ApiClient apiClient;
+    private final ParticipantCache participantCache;
+    private final DeliveryDeduplicator deliveryDeduplicator;
+    private final ClusterSessionDirectory sessionDirectory;
+    private final PacketCodec packetCodec;
+    private final PresenceService presenceService;
+    private final TypingCoalescer typingCoalescer;
+
+    // Off when clients catch up through the API's cursor-based inbox sync instead
+    @Value("${im.offline-queue.enabled:true}")
+    private boolean offlineQueueEnabled;
 
     @Bean
-    public RedisMessageListenerContainer container(RedisConnectionFactory connectionFactory) {
+    public RedisMessageListenerContainer container(
+            RedisConnectionFactory connectionFactory,
+            @Value("${im.delivery.backend:pubsub}") String deliveryBackend) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
-
-        // Subscribe to message channels for fan-out
-        container.addMessageListener(messageListener(), new PatternTopic("im:messages"));
+        // Message, recall and reaction listeners throw on failure so the streams backend can retry them
+        container.setErrorHandler(e -> log.error("Failed to process Redis event", e));
+
+        // Subscribe to message channels for fan-out. With the streams backend, messages,
+        // recalls and reactions are consumed by StreamDeliveryConsumer instead.
+        if (!"streams".equalsIgnoreCase(deliveryBackend)) {
+            // Broadcast channel (fallback) plus this node's own channel for routed messages
+            container.addMessageListener(messageListener(), new PatternTopic("im:messages"));
+            container.addMessageListener(messageListener(), new ChannelTopic(sessionDirectory.getNodeChannel()));
+            container.addMessageListener(recallListener(), new PatternTopic("im:recall"));
+            container.addMessageListener(reactionListener(), new PatternTopic("im:reactions"));
+        }
         container.addMessageListener(typingListener(), new PatternTopic("im:typing"));
         container.addMessageListener(readStatusListener(), new PatternTopic("im:read_status"));
-        container.addMessageListener(recallListener(), new PatternTopic("im:recall"));
-        container.addMessageListener(reactionListener(), new PatternTopic("im:reactions"));
+        container.addMessageListener(presenceListener(), new PatternTopic("im:presence"));
+        container.addMessageListener(participantsListener(), new PatternTopic("im:participants"));
 
         return container;
     }
@@ -47,6 +80,7 @@ public class RedisConfig {
     @Bean
     public MessageListener messageListener() {
         return (Message message, byte[] pattern) -> {
+            String dedupeKey = null;
             try {
                 @SuppressWarnings("unchecked")
                 Map<String, Object> data = objectMapper.readValue(message.getBody(), Map.class);
@@ -55,15 +89,39 @@ public class RedisConfig {
                 Long senderId = ((Number) data.get("senderId")).longValue();
                 String senderDeviceId = (String) data.get("senderDeviceId");
                 String msgId = (String) data.get("msgId");
+                String origin = (String) data.get("origin");
+
+                // Suppress replays of a message this node already fanned out
+                dedupeKey = "msg:" + msgId;
+                if (!deliveryDeduplicator.firstDelivery(dedupeKey)) {
+                    log.debug("Skipping duplicate delivery of message {} (origin={})", msgId, origin);
+                    return;
+                }
 
                 @SuppressWarnings("unchecked")
                 Map<String, Object> messageData = (Map<String, Object>) data.get("message");
 
-                // Get conversation participants from API
-                List<Long> participants = apiClient.getConversationParticipants(conversationId);
+                // Routed events name the recipients held by this node (plus any offline
+                // recipients this node should queue); broadcast events need the full list
+                List<Long> participants;
+                Set<Long> routedOffline = new HashSet<>();
+                if (data.get("recipients") instanceof List<?> recipients) {
+                    List<Long> routed = new ArrayList<>();
+                    recipients.forEach(id -> routed.add(((Number) id).longValue()));
+                    if (data.get("offlineRecipients") instanceof List<?> offline) {
+                        for (Object id : offline) {
+                            routed.add(((Number) id).longValue());
+                            routedOffline.add(((Number) id).longValue());
+                        }
+                    }
+                    participants = routed;
+                } else {
+                    // Get conversation participants (cached, loaded from API on miss)
+                    participants = participantCache.getParticipants(conversationId);
+                }
 
-                log.debug("Message {} - conversation {} has {} participants: {}",
-                        msgId, conversationId, participants.size(), participants);
+                log.debug("Message {} (origin={}) - conversation {} has {} participants: {}",
+                        msgId, origin, conversationId, participants.size(), participants);
 
                 if (participants.isEmpty()) {
                     log.warn("No participants found for conversation {}", conversationId);
@@ -78,50 +136,61 @@ public class RedisConfig {
                     log.warn("Could not parse msgId '{}' as Long for offline queue", msgId);
                 }
 
+                // The payload is identical for every recipient device, so it is built and
+                // serialized once per wire format, then shared across channels
+                Map<String, Object> messagePayload = new HashMap<>(messageData);
+                messagePayload.put("msgId", msgId);
+                messagePayload.put("conversationId", conversationId);
+                messagePayload.put("senderId", senderId);
+                messagePayload.put("senderDeviceId", senderDeviceId);
+                Packet packet = Packet.of(ProtocolType.RECEIVE_MESSAGE, messagePayload);
+
                 // Broadcast message to all participants
                 int onlineCount = 0;
                 int offlineCount = 0;
+                List<Long> notLocal = new ArrayList<>();
 
-                for (Long participantId : participants) {
-                    var sessions = sessionManager.getSessionsByUserId(participantId);
+                try (PacketCodec.SharedFrame frame = packetCodec.share(packet)) {
+                    for (Long participantId : participants) {
+                        var sessions = sessionManager.getSessionsByUserId(participantId);
 
-                    log.debug("Message {} - participant {} has {} sessions",
-                            msgId, participantId, sessions.size());
+                        // Check if user has any online sessions (excluding sender's originating device)
+                        boolean hasOnlineSession = false;
+                        for (var session : sessions) {
+                            // Skip the originating device
+                            if (participantId.equals(senderId) && session.getDeviceId().equals(senderDeviceId)) {
+                                continue;
+                            }
 
-                    // Check if user has any online sessions (excluding sender's originating device)
-                    boolean hasOnlineSession = false;
-                    for (var session : sessions) {
-                        log.debug("Message {} - checking session: userId={}, deviceId={}, senderId={}, senderDeviceId={}",
-                                msgId, participantId, session.getDeviceId(), senderId, senderDeviceId);
+                            hasOnlineSession = true;
 
-                        // Skip the originating device
-                        if (participantId.equals(senderId) && session.getDeviceId().equals(senderDeviceId)) {
-                            log.debug("Message {} - skipping originating device for userId={}", msgId, participantId);
-                            continue;
+                            // Send message to online devices
+                            messageProcessor.sendShared(session, frame);
+                            onlineCount++;
                         }
 
-                        hasOnlineSession = true;
-
-                        // Send message to online devices
-                        Map<String, Object> messagePayload = new java.util.HashMap<>(messageData);
-                        messagePayload.put("msgId", msgId);
-                        messagePayload.put("conversationId", conversationId);
-                        messagePayload.put("senderId", senderId);
-                        messagePayload.put("senderDeviceId", senderDeviceId);
-
-                        Packet packet = Packet.of(ProtocolType.RECEIVE_MESSAGE, messagePayload);
-                        messageProcessor.sendToUserDevice(participantId, session.getDeviceId(), packet);
-                        onlineCount++;
+                        if (!hasOnlineSession && !participantId.equals(senderId)) {
+                            notLocal.add(participantId);
+                        }
                     }
+                }
 
-                    // If participant is offline (no sessions) and not the sender, queue for offline delivery
-                    if (!hasOnlineSession && !participantId.equals(senderId) && messageIdLong != null) {
-                        var result = apiClient.queueOfflineMessage(participantId, null, messageIdLong, conversationId);
+                // Participants without a session here may be connected to another node, which
+                // delivers the message itself. Only users the publisher found without any route
+                // skip the check: no node was sent the message for them.
+                if (offlineQueueEnabled && messageIdLong != null && !notLocal.isEmpty()) {
+                    Set<Long> onlineElsewhere = presenceService.getOnlineUsers(
+                            notLocal.stream().filter(id -> !routedOffline.contains(id)).toList());
+                    List<Long> offline = notLocal.stream().filter(id -> !onlineElsewhere.contains(id)).toList();
+                    if (!offline.isEmpty()) {
+                        // One request and one insert for every offline recipient
+                        var result = apiClient.queueOfflineMessages(messageIdLong, offline);
                         if (result.success()) {
-                            offlineCount++;
-                            log.debug("Queued message {} for offline user {}", msgId, participantId);
+                            offlineCount = offline.size();
+                            log.debug("Queued message {} for offline users {}", msgId, offline);
                         } else {
-                            log.warn("Failed to queue message for offline user {}: {}", participantId, result.error());
+                            throw new IllegalStateException("Failed to queue message " + msgId + " for "
+                                    + offline.size() + " offline users: " + result.error());
                         }
                     }
                 }
@@ -129,7 +198,11 @@ public class RedisConfig {
                 log.debug("Message {} broadcast: {} online devices, {} offline users queued",
                         msgId, onlineCount, offlineCount);
             } catch (Exception e) {
-                log.error("Failed to process Redis message", e);
+                // Let a redelivery of the same event run again instead of being skipped as a duplicate
+                if (dedupeKey != null) {
+                    deliveryDeduplicator.forget(dedupeKey);
+                }
+                throw new IllegalStateException("Failed to process Redis message", e);
             }
         };
     }
@@ -142,24 +215,13 @@ public class RedisConfig {
                 Map<String, Object> data = objectMapper.readValue(message.getBody(), Map.class);
                 Long userId = ((Number) data.get("userId")).longValue();
                 Long conversationId = ((Number) data.get("conversationId")).longValue();
+                boolean typing = !Boolean.FALSE.equals(data.get("typing"));
 
-                // Get conversation participants and send typing notification
-                List<Long> participants = apiClient.getConversationParticipants(conversationId);
-
-                for (Long participantId : participants) {
-                    // Don't notify the user who is typing
-                    if (participantId.equals(userId)) {
-                        continue;
-                    }
-
-                    Packet packet = Packet.of(ProtocolType.TYPING_NOTIFY, Map.of(
-                            "conversationId", conversationId,
-                            "userId", userId
-                    ));
-                    messageProcessor.sendToUser(participantId, packet);
-                }
+                // Get conversation participants and queue the state for their next typing batch
+                List<Long> participants = participantCache.getParticipants(conversationId);
+                typingCoalescer.enqueue(conversationId, userId, typing, participants);
 
-                log.debug("Typing notification sent: userId={}, conversationId={}", userId, conversationId);
+                log.debug("Typing state queued: userId={}, conversationId={}, typing={}", userId, conversationId, typing);
             } catch (Exception e) {
                 log.error("Failed to process typing notification", e);
             }
@@ -212,21 +274,19 @@ public class RedisConfig {
                 }
 
                 // Get conversation participants and broadcast recall notification
-                List<Long> participants = apiClient.getConversationParticipants(conversationId);
-
-                for (Long participantId : participants) {
-                    Packet packet = Packet.of(ProtocolType.RECALL_NOTIFY, Map.of(
-                            "conversationId", conversationId,
-                            "msgId", msgId,
-                            "recalledBy", userId
-                    ));
-                    messageProcessor.sendToUser(participantId, packet);
-                }
+                List<Long> participants = participantCache.getParticipants(conversationId);
+
+                Packet packet = Packet.of(ProtocolType.RECALL_NOTIFY, Map.of(
+                        "conversationId", conversationId,
+                        "msgId", msgId,
+                        "recalledBy", userId
+                ));
+                messageProcessor.sendToUsers(participants, packet);
 
                 log.info("Recall notification broadcast: userId={}, msgId={}, participants={}",
                         userId, msgId, participants.size());
             } catch (Exception e) {
-                log.error("Failed to process recall", e);
+                throw new IllegalStateException("Failed to process recall", e);
             }
         };
     }
@@ -244,23 +304,59 @@ public class RedisConfig {
                 String emoji = (String) data.get("emoji");
 
                 // Get conversation participants and broadcast reaction notification
-                List<Long> participants = apiClient.getConversationParticipants(conversationId);
-
-                for (Long participantId : participants) {
-                    Packet packet = Packet.of(ProtocolType.REACTION_NOTIFY, Map.of(
-                            "action", action,
-                            "userId", userId,
-                            "messageId", messageId,
-                            "conversationId", conversationId,
-                            "emoji", emoji
-                    ));
-                    messageProcessor.sendToUser(participantId, packet);
-                }
+                List<Long> participants = participantCache.getParticipants(conversationId);
+
+                Packet packet = Packet.of(ProtocolType.REACTION_NOTIFY, Map.of(
+                        "action", action,
+                        "userId", userId,
+                        "messageId", messageId,
+                        "conversationId", conversationId,
+                        "emoji", emoji
+                ));
+                messageProcessor.sendToUsers(participants, packet);
 
                 log.debug("Reaction notification broadcast: action={}, userId={}, messageId={}, emoji={}, participants={}",
                         action, userId, messageId, emoji, participants.size());
             } catch (Exception e) {
-                log.error("Failed to process reaction notification", e);
+                throw new IllegalStateException("Failed to process reaction notification", e);
+            }
+        };
+    }
+
+    @Bean
+    public MessageListener presenceListener() {
+        return (Message message, byte[] pattern) -> {
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> data = objectMapper.readValue(message.getBody(), Map.class);
+                Long userId = ((Number) data.get("userId")).longValue();
+                boolean isOnline = Boolean.TRUE.equals(data.get("isOnline"));
+
+                // Every node receives the change and notifies only its own subscribers
+                presenceService.onStatusChange(userId, isOnline);
+                messageProcessor.deliverOnlineStatusChange(userId, isOnline);
+            } catch (Exception e) {
+                log.error("Failed to process online status change", e);
+            }
+        };
+    }
+
+    @Bean
+    public MessageListener participantsListener() {
+        return (Message message, byte[] pattern) -> {
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> data = objectMapper.readValue(message.getBody(), Map.class);
+                Object conversationId = data.get("conversationId");
+
+                if (conversationId instanceof Number number) {
+                    participantCache.invalidate(number.longValue());
+                } else {
+                    participantCache.invalidateAll();
+                }
+            } catch (Exception e) {
+                log.error("Failed to process participants change, clearing participant cache", e);
+                participantCache.invalidateAll();
             }
         };
     }
@@ -1,20 +1,28 @@
 package com.lumichat.im.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumichat.im.handler.LivenessTracker;
+import com.lumichat.im.handler.OutboundBackpressure;
+import com.lumichat.im.handler.PacketDispatcher;
+import com.lumichat.im.handler.WebSocketCompression;
 import com.lumichat.im.handler.WebSocketFrameHandler;
+import com.lumichat.im.protocol.PacketCodec;
+import com.lumichat.im.protocol.WireFormat;
 import com.lumichat.im.service.MessageProcessor;
 import com.lumichat.im.session.SessionManager;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
@@ -22,7 +30,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 @Slf4j
 @Configuration
@@ -31,7 +40,11 @@ public class WebSocketServerConfig {
 
     private final SessionManager sessionManager;
     private final MessageProcessor messageProcessor;
-    private final ObjectMapper objectMapper;
+    private final PacketCodec packetCodec;
+    private final PacketDispatcher packetDispatcher;
+    private final WebSocketCompression webSocketCompression;
+    private final OutboundBackpressure outboundBackpressure;
+    private final LivenessTracker livenessTracker;
 
     @Value("${im.websocket.port:7901}")
     private int wsPort;
@@ -39,48 +52,122 @@ public class WebSocketServerConfig {
     @Value("${im.websocket.path:/ws}")
     private String wsPath;
 
-    @Value("${im.session.heartbeat-interval:30000}")
-    private long heartbeatInterval;
+    // Transport and socket tuning
+    @Value("${im.netty.transport:auto}")
+    private String transport;
+
+    @Value("${im.netty.boss-threads:1}")
+    private int bossThreads;
+
+    @Value("${im.netty.worker-threads:0}")
+    private int workerThreads;
+
+    @Value("${im.netty.backlog:4096}")
+    private int backlog;
+
+    @Value("${im.netty.reuse-port:true}")
+    private boolean reusePort;
+
+    @Value("${im.netty.tcp-nodelay:true}")
+    private boolean tcpNoDelay;
+
+    @Value("${im.netty.so-sndbuf:0}")
+    private int sendBufferSize;
+
+    @Value("${im.netty.so-rcvbuf:0}")
+    private int receiveBufferSize;
+
+    @Value("${im.netty.write-buffer-low:32768}")
+    private int writeBufferLowWaterMark;
+
+    @Value("${im.netty.write-buffer-high:65536}")
+    private int writeBufferHighWaterMark;
+
+    // Flushes issued within one event-loop tick are merged into a single syscall
+    @Value("${im.netty.flush-consolidation.enabled:true}")
+    private boolean flushConsolidation;
+
+    @Value("${im.netty.flush-consolidation.explicit-flush-after-flushes:256}")
+    private int explicitFlushAfterFlushes;
 
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
-    private Channel serverChannel;
+    private final List<Channel> serverChannels = new ArrayList<>();
 
     @PostConstruct
     public void start() {
-        bossGroup = new NioEventLoopGroup(1);
-        workerGroup = new NioEventLoopGroup();
+        boolean epoll = !"nio".equalsIgnoreCase(transport) && Epoll.isAvailable();
+        if ("epoll".equalsIgnoreCase(transport) && !epoll) {
+            log.warn("Epoll transport requested but unavailable, falling back to NIO: {}",
+                    String.valueOf(Epoll.unavailabilityCause()));
+            log.debug("Epoll unavailability cause", Epoll.unavailabilityCause());
+        }
+
+        // With SO_REUSEPORT each boss thread gets its own listening socket, so the
+        // kernel spreads accepts across them; NIO can only use a single acceptor
+        int acceptors = epoll && reusePort ? Math.max(1, bossThreads) : 1;
+        bossGroup = epoll ? new EpollEventLoopGroup(acceptors) : new NioEventLoopGroup(acceptors);
+        workerGroup = epoll ? new EpollEventLoopGroup(workerThreads) : new NioEventLoopGroup(workerThreads);
+        Class<? extends ServerSocketChannel> channelClass =
+                epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
 
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
-                    .handler(new LoggingHandler(LogLevel.INFO))
+                    .channel(channelClass)
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) {
                             ChannelPipeline pipeline = ch.pipeline();
 
+                            // Must be first so it sees the flushes of every handler behind it
+                            if (flushConsolidation) {
+                                pipeline.addLast(new FlushConsolidationHandler(explicitFlushAfterFlushes, true));
+                            }
+
+                            // Closes the connection after im.session.idle-timeout without inbound data
+                            livenessTracker.addTo(pipeline);
+
                             // HTTP codec for WebSocket handshake
                             pipeline.addLast(new HttpServerCodec());
                             pipeline.addLast(new HttpObjectAggregator(65536));
 
-                            // WebSocket protocol handler
-                            pipeline.addLast(new WebSocketServerProtocolHandler(wsPath, null, true));
+                            // permessage-deflate, negotiated during the handshake
+                            webSocketCompression.addTo(pipeline);
 
-                            // Idle state handler for heartbeat timeout
-                            long readTimeout = heartbeatInterval * 3 / 1000; // 3x heartbeat interval
-                            pipeline.addLast(new IdleStateHandler(readTimeout, 0, 0, TimeUnit.SECONDS));
+                            // WebSocket protocol handler; subprotocol selects JSON text or CBOR binary frames
+                            pipeline.addLast(new WebSocketServerProtocolHandler(
+                                    wsPath, WireFormat.supportedSubprotocols(), true));
+
+                            // Drop/coalesce low-priority frames and cut off slow consumers
+                            outboundBackpressure.addTo(pipeline);
 
                             // Custom WebSocket frame handler
-                            pipeline.addLast(new WebSocketFrameHandler(sessionManager, messageProcessor, objectMapper));
+                            pipeline.addLast(new WebSocketFrameHandler(
+                                    sessionManager, messageProcessor, packetCodec, packetDispatcher));
                         }
                     })
-                    .option(ChannelOption.SO_BACKLOG, 128)
-                    .childOption(ChannelOption.SO_KEEPALIVE, true);
-
-            serverChannel = b.bind(wsPort).sync().channel();
-            log.info("WebSocket server started on port {}", wsPort);
+                    .option(ChannelOption.SO_BACKLOG, backlog)
+                    .option(ChannelOption.SO_REUSEADDR, true)
+                    .childOption(ChannelOption.SO_KEEPALIVE, true)
+                    .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay)
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                            new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
+            if (sendBufferSize > 0) {
+                b.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+            }
+            if (receiveBufferSize > 0) {
+                b.childOption(ChannelOption.SO_RCVBUF, receiveBufferSize);
+            }
+            if (epoll && reusePort) {
+                b.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+
+            for (int i = 0; i < acceptors; i++) {
+                serverChannels.add(b.bind(wsPort).sync().channel());
+            }
+            log.info("WebSocket server started on port {}: transport={}, acceptors={}, backlog={}",
+                    wsPort, epoll ? "epoll" : "nio", acceptors, backlog);
 
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -92,7 +179,7 @@ public class WebSocketServerConfig {
     public void stop() {
         log.info("Shutting down WebSocket server...");
 
-        if (serverChannel != null) {
+        for (Channel serverChannel : serverChannels) {
             serverChannel.close();
         }
         if (bossGroup != null) {
@@ -1,5 +1,14 @@
 package com.lumichat.im.controller;
 
+import com.lumichat.im.client.ApiHttpTransport;
+import com.lumichat.im.handler.LivenessTracker;
+import com.lumichat.im.handler.OutboundBackpressure;
+import com.lumichat.im.handler.WebSocketCompression;
+import com.lumichat.im.service.ParticipantCache;
+import com.lumichat.im.service.PresenceService;
+import com.lumichat.im.service.TypingCoalescer;
+import com.lumichat.im.session.ClusterSessionDirectory;
+import com.lumichat.im.session.PresenceSubscriptions;
 import com.lumichat.im.session.SessionManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +31,15 @@ public class HealthController {
 
     private final StringRedisTemplate redisTemplate;
     private final SessionManager sessionManager;
+    private final ApiHttpTransport apiHttpTransport;
+    private final ParticipantCache participantCache;
+    private final WebSocketCompression webSocketCompression;
+    private final OutboundBackpressure outboundBackpressure;
+    private final LivenessTracker livenessTracker;
+    private final PresenceSubscriptions presenceSubscriptions;
+    private final PresenceService presenceService;
+    private final ClusterSessionDirectory sessionDirectory;
+    private final TypingCoalescer typingCoalescer;
 
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> health() {
@@ -56,6 +74,9 @@ public class HealthController {
             "activeSessions", sessionManager.getOnlineUserCount()
         ));
 
+        // API client connection pool (informational, does not affect status)
+        checks.put("apiClient", apiHttpTransport.getStats());
+
         result.put("status", allHealthy ? "UP" : "DOWN");
         result.put("timestamp", System.currentTimeMillis());
         result.put("checks", checks);
@@ -86,6 +107,56 @@ public class HealthController {
         return health();
     }
 
+    /**
+     * Get API client connection pool statistics.
+     */
+    @GetMapping("/health/api-pool")
+    public Map<String, Object> apiPool() {
+        Map<String, Object> result = new LinkedHashMap<>(apiHttpTransport.getStats());
+        result.put("timestamp", System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * Get participant cache statistics.
+     */
+    @GetMapping("/health/participant-cache")
+    public Map<String, Object> participantCache() {
+        Map<String, Object> result = new LinkedHashMap<>(participantCache.getStats());
+        result.put("timestamp", System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * Get WebSocket compression statistics.
+     */
+    @GetMapping("/health/compression")
+    public Map<String, Object> compression() {
+        Map<String, Object> result = new LinkedHashMap<>(webSocketCompression.getStats());
+        result.put("timestamp", System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * Get outbound backpressure statistics.
+     */
+    @GetMapping("/health/backpressure")
+    public Map<String, Object> backpressure() {
+        Map<String, Object> result = new LinkedHashMap<>(outboundBackpressure.getStats());
+        result.put("timestamp", System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * Get typing coalescing statistics.
+     */
+    @GetMapping("/health/typing")
+    public Map<String, Object> typing() {
+        Map<String, Object> result = new LinkedHashMap<>(typingCoalescer.getStats());
+        result.put("timestamp", System.currentTimeMillis());
+        return result;
+    }
+
     /**
      * Get current session statistics.
      */
@@ -93,7 +164,11 @@ public class HealthController {
     public Map<String, Object> sessions() {
         return Map.of(
             "onlineUsers", sessionManager.getOnlineUserCount(),
-            "activeSessions", sessionManager.getAllSessions().size(),
+            "activeSessions", sessionManager.getSessionCount(),
+            "liveness", livenessTracker.getStats(),
+            "presenceSubscriptions", presenceSubscriptions.getStats(),
+            "presenceCache", presenceService.getStats(),
+            "cluster", sessionDirectory.getStats(),
             "timestamp", System.currentTimeMillis()
         );
     }
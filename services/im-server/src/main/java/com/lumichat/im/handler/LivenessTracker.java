@@ -0,0 +1,148 @@
+package com.lumichat.im.handler;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closes connections that have received nothing for {@code im.session.idle-timeout},
+ * which defaults to three times {@code im.session.heartbeat-interval} and must
+ * be longer than one interval.
+ *
+ * All channels share one {@link HashedWheelTimer}. Reading a packet only stores
+ * {@link System#nanoTime()} in a volatile field; the channel's wheel entry
+ * checks that timestamp when it comes due and either closes the channel or
+ * re-arms itself for the remaining time. Each wheel tick touches only the
+ * entries that are due, never the full session set.
+ */
+@Slf4j
+@Component
+public class LivenessTracker {
+
+    static final AttributeKey<Liveness> LIVENESS = AttributeKey.valueOf("im.liveness");
+
+    private final long idleTimeoutNanos;
+    private final HashedWheelTimer timer;
+    private final ChannelHandler activityHandler = new ActivityHandler();
+
+    private final AtomicInteger tracked = new AtomicInteger();
+    private final LongAdder idleClosed = new LongAdder();
+
+    public LivenessTracker(
+            @Value("${im.session.heartbeat-interval:30000}") long heartbeatIntervalMs,
+            @Value("${im.session.idle-timeout:0}") long idleTimeoutMs,
+            @Value("${im.session.idle-tick:1000}") long tickMs) {
+        if (idleTimeoutMs <= 0) {
+            idleTimeoutMs = heartbeatIntervalMs * 3;
+        } else if (idleTimeoutMs <= heartbeatIntervalMs) {
+            throw new IllegalArgumentException("im.session.idle-timeout (" + idleTimeoutMs
+                    + "ms) must be longer than im.session.heartbeat-interval (" + heartbeatIntervalMs + "ms)");
+        }
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.timer = new HashedWheelTimer(r -> {
+            Thread thread = new Thread(r, "im-liveness-timer");
+            thread.setDaemon(true);
+            return thread;
+        }, tickMs, TimeUnit.MILLISECONDS, 512);
+        log.info("Liveness tracker: idleTimeout={}ms, tick={}ms", idleTimeoutMs, tickMs);
+    }
+
+    /**
+     * Add the activity handler to a channel pipeline. Added ahead of the HTTP
+     * codec so any inbound bytes, including WebSocket pings, count as activity.
+     */
+    public void addTo(ChannelPipeline pipeline) {
+        pipeline.addLast(activityHandler);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("idleTimeoutMs", TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos));
+        stats.put("trackedChannels", tracked.get());
+        stats.put("pendingTimeouts", timer.pendingTimeouts());
+        stats.put("idleClosed", idleClosed.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() {
+        timer.stop();
+    }
+
+    private void track(Channel channel) {
+        Liveness liveness = new Liveness(channel);
+        channel.attr(LIVENESS).set(liveness);
+        tracked.incrementAndGet();
+        liveness.arm(idleTimeoutNanos);
+        channel.closeFuture().addListener(f -> {
+            tracked.decrementAndGet();
+            liveness.timeout.cancel();
+        });
+    }
+
+    final class Liveness implements TimerTask {
+
+        private final Channel channel;
+        volatile long lastActivityNanos = System.nanoTime();
+        volatile Timeout timeout;
+
+        Liveness(Channel channel) {
+            this.channel = channel;
+        }
+
+        void arm(long delayNanos) {
+            timeout = timer.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run(Timeout expired) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            long idle = System.nanoTime() - lastActivityNanos;
+            if (idle >= idleTimeoutNanos) {
+                idleClosed.increment();
+                log.info("Closing idle connection {}: no activity for {}ms",
+                        channel.remoteAddress(), TimeUnit.NANOSECONDS.toMillis(idle));
+                channel.close();
+            } else {
+                arm(idleTimeoutNanos - idle);
+            }
+        }
+    }
+
+    @ChannelHandler.Sharable
+    private final class ActivityHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            track(ctx.channel());
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            Liveness liveness = ctx.channel().attr(LIVENESS).get();
+            if (liveness != null) {
+                liveness.lastActivityNanos = System.nanoTime();
+            }
+            super.channelRead(ctx, msg);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.lumichat.im.handler;
+
+import com.lumichat.im.protocol.Packet;
+import com.lumichat.im.protocol.PacketCodec;
+import com.lumichat.im.protocol.ProtocolType;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outbound flow control for WebSocket channels, driven by the channel's
+ * write-buffer water marks ({@code im.netty.write-buffer-low/high}).
+ *
+ * While a channel is unwritable, low-priority frames (typing, presence) are
+ * dropped or coalesced to the latest value per user/conversation and sent once
+ * the channel drains. Other frames are still queued, but a consumer whose
+ * pending bytes exceed {@code max-pending-bytes}, or that stays unwritable for
+ * longer than {@code slow-consumer-timeout}, is disconnected so a stalled client
+ * cannot grow the outbound buffer without bound.
+ */
+@Slf4j
+@Component
+public class OutboundBackpressure {
+
+    static final AttributeKey<State> STATE = AttributeKey.valueOf("im.backpressure");
+
+    public enum LowPriorityPolicy { drop, coalesce }
+
+    private final PacketCodec packetCodec;
+    private final boolean enabled;
+    private final LowPriorityPolicy policy;
+    private final long maxPendingBytes;
+    private final long slowConsumerTimeoutMs;
+
+    private final LongAdder lowPriorityDropped = new LongAdder();
+    private final LongAdder lowPriorityCoalesced = new LongAdder();
+    private final LongAdder coalescedFlushed = new LongAdder();
+    private final LongAdder queuedWhileUnwritable = new LongAdder();
+    private final LongAdder unwritableEvents = new LongAdder();
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+
+    public OutboundBackpressure(
+            PacketCodec packetCodec,
+            @Value("${im.websocket.backpressure.enabled:true}") boolean enabled,
+            @Value("${im.websocket.backpressure.low-priority-policy:coalesce}") LowPriorityPolicy policy,
+            @Value("${im.websocket.backpressure.max-pending-bytes:4194304}") long maxPendingBytes,
+            @Value("${im.websocket.backpressure.slow-consumer-timeout:30000}") long slowConsumerTimeoutMs) {
+        this.packetCodec = packetCodec;
+        this.enabled = enabled;
+        this.policy = policy;
+        this.maxPendingBytes = maxPendingBytes;
+        this.slowConsumerTimeoutMs = slowConsumerTimeoutMs;
+        log.info("WebSocket backpressure: enabled={}, policy={}, maxPendingBytes={}, slowConsumerTimeout={}ms",
+                enabled, policy, maxPendingBytes, slowConsumerTimeoutMs);
+    }
+
+    /**
+     * Add the writability watcher to a channel pipeline.
+     */
+    public void addTo(ChannelPipeline pipeline) {
+        if (enabled) {
+            pipeline.addLast(new WritabilityWatcher());
+        }
+    }
+
+    /**
+     * Decide whether a packet should be written to the channel now. Returns
+     * {@code false} when the packet was dropped, held for coalescing, or the
+     * channel was closed as a slow consumer; the caller then must not write it.
+     * Channels without a watcher are always admitted.
+     */
+    public boolean admit(Channel channel, Packet packet) {
+        if (!channel.hasAttr(STATE) || channel.isWritable()) {
+            return true;
+        }
+        State state = channel.attr(STATE).get();
+        if (state == null) {
+            return true;
+        }
+        if (state.closing.get()) {
+            return false;
+        }
+
+        if (isLowPriority(packet.getType())) {
+            if (policy == LowPriorityPolicy.coalesce) {
+                state.coalesced.merge(coalesceKey(packet), packet, OutboundBackpressure::supersede);
+                lowPriorityCoalesced.increment();
+                // The channel may have drained between the check and the put
+                if (channel.isWritable()) {
+                    channel.eventLoop().execute(() -> flushCoalesced(channel, state));
+                }
+            } else {
+                lowPriorityDropped.increment();
+            }
+            return false;
+        }
+
+        if (pendingBytes(channel) > maxPendingBytes) {
+            disconnect(channel, state, "outbound buffer over " + maxPendingBytes + " bytes");
+            return false;
+        }
+        queuedWhileUnwritable.increment();
+        return true;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("lowPriorityPolicy", policy.name());
+        stats.put("maxPendingBytes", maxPendingBytes);
+        stats.put("slowConsumerTimeoutMs", slowConsumerTimeoutMs);
+        stats.put("lowPriorityDropped", lowPriorityDropped.sum());
+        stats.put("lowPriorityCoalesced", lowPriorityCoalesced.sum());
+        stats.put("coalescedFlushed", coalescedFlushed.sum());
+        stats.put("queuedWhileUnwritable", queuedWhileUnwritable.sum());
+        stats.put("unwritableEvents", unwritableEvents.sum());
+        stats.put("slowConsumerDisconnects", slowConsumerDisconnects.sum());
+        return stats;
+    }
+
+    private static boolean isLowPriority(int type) {
+        return type == ProtocolType.TYPING_NOTIFY || type == ProtocolType.ONLINE_STATUS_CHANGE;
+    }
+
+    /**
+     * Later typing/presence packets for the same user (and conversation) supersede earlier ones.
+     */
+    private static String coalesceKey(Packet packet) {
+        if (packet.getData() instanceof Map<?, ?> data) {
+            return packet.getType() + ":" + data.get("userId") + ":" + data.get("conversationId");
+        }
+        return String.valueOf(packet.getType());
+    }
+
+    /**
+     * A newer packet replaces a pending one, except for batched typing frames
+     * ({@code {"states":[...]}}), which all share one key: their states are
+     * merged per user/conversation so an earlier batch's users are not lost.
+     */
+    private static Packet supersede(Packet pending, Packet newer) {
+        if (!(pending.getData() instanceof Map<?, ?> older && older.get("states") instanceof List<?> olderStates)
+                || !(newer.getData() instanceof Map<?, ?> latest && latest.get("states") instanceof List<?> newerStates)) {
+            return newer;
+        }
+        Map<String, Object> merged = new LinkedHashMap<>();
+        for (List<?> states : List.of(olderStates, newerStates)) {
+            for (Object state : states) {
+                if (state instanceof Map<?, ?> entry) {
+                    merged.put(entry.get("userId") + ":" + entry.get("conversationId"), entry);
+                }
+            }
+        }
+        return Packet.of(newer.getType(), Map.of("states", new ArrayList<>(merged.values())));
+    }
+
+    private static long pendingBytes(Channel channel) {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        return buffer != null ? buffer.totalPendingWriteBytes() : 0;
+    }
+
+    private void flushCoalesced(Channel channel, State state) {
+        if (state.coalesced.isEmpty() || !channel.isActive()) {
+            return;
+        }
+        int written = 0;
+        Iterator<Packet> it = state.coalesced.values().iterator();
+        while (it.hasNext() && channel.isWritable()) {
+            Packet packet = it.next();
+            it.remove();
+            try {
+                channel.write(packetCodec.encode(packet, packetCodec.formatOf(channel)));
+                written++;
+            } catch (Exception e) {
+                log.error("Failed to encode coalesced packet: type={}", packet.getType(), e);
+            }
+        }
+        if (written > 0) {
+            coalescedFlushed.add(written);
+            channel.flush();
+        }
+    }
+
+    private void disconnect(Channel channel, State state, String reason) {
+        if (state.closing.compareAndSet(false, true)) {
+            slowConsumerDisconnects.increment();
+            state.coalesced.clear();
+            log.warn("Disconnecting slow consumer {}: {}", channel.remoteAddress(), reason);
+            channel.close();
+        }
+    }
+
+    static final class State {
+        final Map<String, Packet> coalesced = new ConcurrentHashMap<>();
+        final AtomicBoolean closing = new AtomicBoolean();
+        long unwritableSinceNanos;  // event loop only
+    }
+
+    private final class WritabilityWatcher extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            ctx.channel().attr(STATE).set(new State());
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            Channel channel = ctx.channel();
+            State state = channel.attr(STATE).get();
+            if (channel.isWritable()) {
+                state.unwritableSinceNanos = 0;
+                flushCoalesced(channel, state);
+            } else if (state.unwritableSinceNanos == 0) {
+                long since = System.nanoTime();
+                state.unwritableSinceNanos = since;
+                unwritableEvents.increment();
+                ctx.executor().schedule(() -> {
+                    if (state.unwritableSinceNanos == since && !channel.isWritable()) {
+                        disconnect(channel, state, "unwritable for " + slowConsumerTimeoutMs + "ms");
+                    }
+                }, slowConsumerTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+            super.channelWritabilityChanged(ctx);
+        }
+    }
+}
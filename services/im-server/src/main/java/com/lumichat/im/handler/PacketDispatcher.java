@@ -0,0 +1,124 @@
+package com.lumichat.im.handler;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Execution stage between the Netty pipeline and {@code MessageProcessor}.
+ * Packet handlers make blocking calls (API over HTTP, Redis), so they run on
+ * virtual threads instead of the event loop. Tasks for one channel run one at
+ * a time in submission order; writes issued from a task are marshalled back
+ * onto the channel's own event loop by Netty.
+ */
+@Slf4j
+@Component
+public class PacketDispatcher {
+
+    private static final AttributeKey<ChannelTaskQueue> TASK_QUEUE =
+            AttributeKey.valueOf("im.dispatch.taskQueue");
+
+    private final ExecutorService executor;
+
+    public PacketDispatcher(@Value("${im.dispatch.virtual-threads:true}") boolean virtualThreads) {
+        this.executor = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : null;
+        log.info("Packet dispatcher started: mode={}", virtualThreads ? "virtual-threads" : "inline");
+    }
+
+    /**
+     * Run a task for the given channel, after every task previously submitted for it.
+     * When virtual threads are disabled the task runs inline on the caller thread.
+     */
+    public void dispatch(Channel channel, Runnable task) {
+        if (executor == null) {
+            runSafely(task);
+            return;
+        }
+
+        ChannelTaskQueue queue = channel.attr(TASK_QUEUE).get();
+        if (queue == null) {
+            ChannelTaskQueue created = new ChannelTaskQueue();
+            queue = channel.attr(TASK_QUEUE).setIfAbsent(created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        queue.submit(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("Dispatched task failed", e);
+        }
+    }
+
+    /**
+     * Serial queue for one channel. At most one drain task is scheduled at a time,
+     * so tasks never run concurrently and keep their submission order.
+     */
+    private final class ChannelTaskQueue {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        void submit(Runnable task) {
+            tasks.add(task);
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                    log.warn("Dispatcher is shut down, dropping {} pending tasks", tasks.size());
+                    tasks.clear();
+                }
+            }
+        }
+
+        private void drain() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                runSafely(task);
+            }
+            draining.set(false);
+            // A task may have been queued after the last poll but before the flag was cleared
+            if (!tasks.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+}
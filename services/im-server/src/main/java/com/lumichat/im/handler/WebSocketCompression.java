@@ -0,0 +1,142 @@
+package com.lumichat.im.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Negotiated permessage-deflate (RFC 7692) for the WebSocket pipeline.
+ *
+ * Frames smaller than {@code im.websocket.compression.min-size} are sent as-is,
+ * since deflate framing overhead outweighs the savings on small packets; large
+ * payloads such as offline-sync and sync responses are compressed at
+ * {@code im.websocket.compression.level}. Bytes before/after and time spent in
+ * the deflater are counted for the health endpoint.
+ */
+@Slf4j
+@Component
+public class WebSocketCompression {
+
+    private final boolean enabled;
+    private final int level;
+    private final int minSize;
+
+    private final LongAdder framesCompressed = new LongAdder();
+    private final LongAdder framesSkipped = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+
+    public WebSocketCompression(
+            @Value("${im.websocket.compression.enabled:true}") boolean enabled,
+            @Value("${im.websocket.compression.level:6}") int level,
+            @Value("${im.websocket.compression.min-size:1024}") int minSize) {
+        this.enabled = enabled;
+        this.level = level;
+        this.minSize = minSize;
+        log.info("WebSocket compression: enabled={}, level={}, minSize={}", enabled, level, minSize);
+    }
+
+    /**
+     * Add the extension handler to a channel pipeline. Must run before the
+     * WebSocket protocol handler so the handshake can negotiate the extension.
+     */
+    public void addTo(ChannelPipeline pipeline) {
+        if (!enabled) {
+            return;
+        }
+        FrameTap tap = new FrameTap();
+        pipeline.addLast(tap);
+        pipeline.addLast(new WebSocketServerExtensionHandler(new PerMessageDeflateServerExtensionHandshaker(
+                level,
+                ZlibCodecFactory.isSupportingWindowSizeAndMemLevel(),
+                PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE,
+                false,
+                false,
+                tap)));
+    }
+
+    public Map<String, Object> getStats() {
+        long in = bytesIn.sum();
+        long out = bytesOut.sum();
+        long compressed = framesCompressed.sum();
+        long nanos = compressNanos.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("level", level);
+        stats.put("minSize", minSize);
+        stats.put("framesCompressed", compressed);
+        stats.put("framesSkipped", framesSkipped.sum());
+        stats.put("bytesBeforeCompression", in);
+        stats.put("bytesAfterCompression", out);
+        stats.put("bytesSaved", in - out);
+        stats.put("compressionRatio", in > 0 ? (double) out / in : 1.0);
+        stats.put("compressionMillis", nanos / 1_000_000);
+        stats.put("avgMicrosPerFrame", compressed > 0 ? nanos / 1_000 / compressed : 0);
+        return stats;
+    }
+
+    /**
+     * Per-channel filter and outbound tap. The deflate encoder consults the filter
+     * right before compressing a frame; the compressed frame then passes this
+     * handler (which sits just before the extension handler) on its way out.
+     * Both happen synchronously on the channel's event loop.
+     */
+    private final class FrameTap extends ChannelOutboundHandlerAdapter
+            implements WebSocketExtensionFilter, WebSocketExtensionFilterProvider {
+
+        private long pendingBytes;
+        private long startNanos;
+
+        @Override
+        public boolean mustSkip(WebSocketFrame frame) {
+            int size = frame.content().readableBytes();
+            if (size < minSize) {
+                framesSkipped.increment();
+                return true;
+            }
+            pendingBytes = size;
+            startNanos = System.nanoTime();
+            return false;
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (startNanos != 0 && msg instanceof WebSocketFrame frame
+                    && (frame.rsv() & WebSocketExtension.RSV1) != 0) {
+                compressNanos.add(System.nanoTime() - startNanos);
+                bytesIn.add(pendingBytes);
+                bytesOut.add(frame.content().readableBytes());
+                framesCompressed.increment();
+                startNanos = 0;
+            }
+            super.write(ctx, msg, promise);
+        }
+
+        @Override
+        public WebSocketExtensionFilter encoderFilter() {
+            return this;
+        }
+
+        @Override
+        public WebSocketExtensionFilter decoderFilter() {
+            return WebSocketExtensionFilter.NEVER_SKIP;
+        }
+    }
+}
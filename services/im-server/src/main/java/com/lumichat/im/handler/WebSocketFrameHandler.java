@@ -1,15 +1,18 @@
 package com.lumichat.im.handler;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lumichat.im.protocol.Packet;
+import com.lumichat.im.protocol.PacketCodec;
 import com.lumichat.im.protocol.ProtocolType;
+import com.lumichat.im.protocol.WireFormat;
 import com.lumichat.im.service.MessageProcessor;
 import com.lumichat.im.session.SessionManager;
 import com.lumichat.im.session.UserSession;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -19,19 +22,18 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
 
     private final SessionManager sessionManager;
     private final MessageProcessor messageProcessor;
-    private final ObjectMapper objectMapper;
+    private final PacketCodec packetCodec;
+    private final PacketDispatcher packetDispatcher;
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
-        if (frame instanceof TextWebSocketFrame textFrame) {
-            String text = textFrame.text();
-            log.debug("Received message: {}", text);
-
+        if (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) {
             try {
-                Packet packet = objectMapper.readValue(text, Packet.class);
+                Packet packet = packetCodec.decode(frame);
+                log.debug("Received packet: type={}, seq={}", packet.getType(), packet.getSeq());
                 handlePacket(ctx, packet);
             } catch (Exception e) {
-                log.error("Failed to parse message: {}", text, e);
+                log.error("Failed to parse {} frame", frame instanceof TextWebSocketFrame ? "text" : "binary", e);
                 sendError(ctx, "Invalid message format");
             }
         } else {
@@ -39,13 +41,32 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
         }
     }
 
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        // Remember the negotiated subprotocol so responses use the same wire format
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete handshake) {
+            WireFormat format = WireFormat.fromSubprotocol(handshake.selectedSubprotocol());
+            ctx.channel().attr(PacketCodec.WIRE_FORMAT).set(format);
+            log.debug("WebSocket handshake complete: wireFormat={}", format);
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
     private void handlePacket(ChannelHandlerContext ctx, Packet packet) {
-        sessionManager.updateLastActive(ctx.channel());
+        // Heartbeats never block, answer them directly on the event loop
+        if (packet.getType() == ProtocolType.HEARTBEAT) {
+            messageProcessor.handleHeartbeat(ctx, packet);
+            return;
+        }
+
+        // Everything else may call the API or Redis, so run it off the event loop
+        packetDispatcher.dispatch(ctx.channel(), () -> processPacket(ctx, packet));
+    }
 
+    private void processPacket(ChannelHandlerContext ctx, Packet packet) {
         switch (packet.getType()) {
             case ProtocolType.LOGIN -> messageProcessor.handleLogin(ctx, packet);
             case ProtocolType.LOGOUT -> messageProcessor.handleLogout(ctx, packet);
-            case ProtocolType.HEARTBEAT -> messageProcessor.handleHeartbeat(ctx, packet);
             case ProtocolType.CHAT_MESSAGE -> messageProcessor.handleChatMessage(ctx, packet);
             case ProtocolType.TYPING -> messageProcessor.handleTyping(ctx, packet);
             case ProtocolType.READ_ACK -> messageProcessor.handleReadAck(ctx, packet);
@@ -66,13 +87,16 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
-        UserSession session = sessionManager.getSessionByChannel(ctx.channel());
-        if (session != null) {
-            log.info("WebSocket disconnected: userId={}, deviceId={}",
-                    session.getUserId(), session.getDeviceId());
-            messageProcessor.handleDisconnect(session);
-        }
-        sessionManager.removeSession(ctx.channel());
+        // Queued behind any packets still being processed for this channel
+        packetDispatcher.dispatch(ctx.channel(), () -> {
+            UserSession session = sessionManager.getSessionByChannel(ctx.channel());
+            if (session != null) {
+                log.info("WebSocket disconnected: userId={}, deviceId={}",
+                        session.getUserId(), session.getDeviceId());
+                messageProcessor.handleDisconnect(session);
+            }
+            sessionManager.removeSession(ctx.channel());
+        });
     }
 
     @Override
@@ -85,8 +109,7 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
         try {
             Packet errorPacket = Packet.of(ProtocolType.SERVER_ERROR,
                     java.util.Map.of("error", message));
-            String json = objectMapper.writeValueAsString(errorPacket);
-            ctx.writeAndFlush(new TextWebSocketFrame(json));
+            ctx.writeAndFlush(packetCodec.encode(errorPacket, packetCodec.formatOf(ctx.channel())));
         } catch (Exception e) {
             log.error("Failed to send error response", e);
         }
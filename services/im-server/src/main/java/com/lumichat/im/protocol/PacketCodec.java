@@ -0,0 +1,140 @@
+package com.lumichat.im.protocol;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encodes and decodes {@link Packet}s for either wire format.
+ *
+ * Inbound {@code data} is bound straight to its typed class ({@link LoginData},
+ * {@link ChatMessageData}) from the parsed tree, instead of going through an
+ * untyped map and a second {@code convertValue} pass. Other packet types keep
+ * a plain map payload.
+ */
+@Component
+public class PacketCodec {
+
+    public static final AttributeKey<WireFormat> WIRE_FORMAT = AttributeKey.valueOf("im.wireFormat");
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+
+    public PacketCodec(ObjectMapper objectMapper) {
+        this.jsonMapper = objectMapper;
+        this.cborMapper = objectMapper.copyWith(new CBORFactory());
+    }
+
+    public WireFormat formatOf(Channel channel) {
+        return channel.hasAttr(WIRE_FORMAT) ? channel.attr(WIRE_FORMAT).get() : WireFormat.JSON;
+    }
+
+    public Packet decode(WebSocketFrame frame) throws IOException {
+        ObjectMapper mapper = frame instanceof BinaryWebSocketFrame ? cborMapper : jsonMapper;
+        JsonNode root;
+        try (InputStream in = new ByteBufInputStream(frame.content())) {
+            root = mapper.readTree(in);
+        }
+
+        int type = root.path("type").asInt();
+        JsonNode seq = root.get("seq");
+        JsonNode timestamp = root.get("timestamp");
+        return Packet.builder()
+                .type(type)
+                .seq(seq != null && !seq.isNull() ? seq.asText() : null)
+                .timestamp(timestamp != null && !timestamp.isNull() ? timestamp.asLong() : null)
+                .data(decodeData(mapper, type, root.get("data")))
+                .build();
+    }
+
+    private Object decodeData(ObjectMapper mapper, int type, JsonNode data) throws IOException {
+        if (data == null || data.isNull()) {
+            return null;
+        }
+        return switch (type) {
+            case ProtocolType.LOGIN -> mapper.treeToValue(data, LoginData.class);
+            case ProtocolType.CHAT_MESSAGE -> mapper.treeToValue(data, ChatMessageData.class);
+            default -> mapper.treeToValue(data, Object.class);
+        };
+    }
+
+    public WebSocketFrame encode(Packet packet, WireFormat format) throws IOException {
+        return frame(format, encodeBuffer(packet, format));
+    }
+
+    /**
+     * Wrap a packet for fan-out; it is serialized at most once per wire format.
+     */
+    public SharedFrame share(Packet packet) {
+        return new SharedFrame(packet);
+    }
+
+    private ByteBuf encodeBuffer(Packet packet, WireFormat format) throws IOException {
+        ObjectMapper mapper = format == WireFormat.CBOR ? cborMapper : jsonMapper;
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+        try {
+            mapper.writeValue((OutputStream) new ByteBufOutputStream(buf), packet);
+            return buf;
+        } catch (IOException | RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    private static WebSocketFrame frame(WireFormat format, ByteBuf content) {
+        return format == WireFormat.CBOR ? new BinaryWebSocketFrame(content) : new TextWebSocketFrame(content);
+    }
+
+    /**
+     * A packet encoded lazily into reference-counted buffers, one per wire format.
+     * Each {@link #frameFor} call returns a frame holding its own retained view;
+     * {@link #close} releases the shared buffers once all frames are written.
+     * Not thread-safe: use from a single fan-out loop.
+     */
+    public final class SharedFrame implements AutoCloseable {
+
+        private final Packet packet;
+        private final ByteBuf[] encoded = new ByteBuf[WireFormat.values().length];
+
+        private SharedFrame(Packet packet) {
+            this.packet = packet;
+        }
+
+        public Packet getPacket() {
+            return packet;
+        }
+
+        public WebSocketFrame frameFor(WireFormat format) throws IOException {
+            ByteBuf buf = encoded[format.ordinal()];
+            if (buf == null) {
+                buf = encodeBuffer(packet, format);
+                encoded[format.ordinal()] = buf;
+            }
+            return frame(format, buf.retainedDuplicate());
+        }
+
+        @Override
+        public void close() {
+            for (int i = 0; i < encoded.length; i++) {
+                if (encoded[i] != null) {
+                    encoded[i].release();
+                    encoded[i] = null;
+                }
+            }
+        }
+    }
+}
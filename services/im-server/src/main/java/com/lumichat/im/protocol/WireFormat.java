@@ -0,0 +1,31 @@
+package com.lumichat.im.protocol;
+
+/**
+ * Encoding of packets on a WebSocket connection, negotiated through the
+ * {@code Sec-WebSocket-Protocol} header. Clients that request no subprotocol get JSON.
+ */
+public enum WireFormat {
+    JSON("lumi.json"),   // TextWebSocketFrame carrying the JSON Packet
+    CBOR("lumi.cbor");   // BinaryWebSocketFrame carrying the same Packet as CBOR
+
+    private final String subprotocol;
+
+    WireFormat(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    public static WireFormat fromSubprotocol(String subprotocol) {
+        return CBOR.subprotocol.equals(subprotocol) ? CBOR : JSON;
+    }
+
+    /**
+     * Comma-separated list for the WebSocket handshaker.
+     */
+    public static String supportedSubprotocols() {
+        return JSON.subprotocol + "," + CBOR.subprotocol;
+    }
+}
@@ -0,0 +1,52 @@
+package com.lumichat.im.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receiver-side idempotency window for fan-out events.
+ * Remembers recently delivered keys (e.g. message ids) so a replayed or
+ * duplicated Redis event is not delivered to clients a second time.
+ */
+@Component
+public class DeliveryDeduplicator {
+
+    private final Cache<String, Boolean> seen;
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public DeliveryDeduplicator(
+            @Value("${im.fanout.dedupe-window:60000}") long windowMs,
+            @Value("${im.fanout.dedupe-max-size:100000}") long maxSize) {
+        this.seen = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(windowMs))
+                .build();
+    }
+
+    /**
+     * Returns true the first time a key is seen within the window, false for repeats.
+     */
+    public boolean firstDelivery(String key) {
+        boolean first = seen.asMap().putIfAbsent(key, Boolean.TRUE) == null;
+        if (!first) {
+            duplicates.incrementAndGet();
+        }
+        return first;
+    }
+
+    /**
+     * Drops a key whose delivery failed, so a retry of the same event is not skipped.
+     */
+    public void forget(String key) {
+        seen.invalidate(key);
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+}
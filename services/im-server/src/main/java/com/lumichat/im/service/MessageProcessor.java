@@ -2,17 +2,21 @@ package com.lumichat.im.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lumichat.im.client.ApiClient;
+import com.lumichat.im.handler.OutboundBackpressure;
 import com.lumichat.im.protocol.*;
 import com.lumichat.im.security.JwtTokenValidator;
+import com.lumichat.im.session.ClusterSessionDirectory;
+import com.lumichat.im.session.PresenceSubscriptions;
 import com.lumichat.im.session.SessionManager;
 import com.lumichat.im.session.UserSession;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -26,10 +30,19 @@ public class MessageProcessor {
     private final StringRedisTemplate redisTemplate;
     private final JwtTokenValidator jwtTokenValidator;
     private final ApiClient apiClient;
+    private final ClusterSessionDirectory sessionDirectory;
+    private final RealtimeEventPublisher eventPublisher;
+    private final PacketCodec packetCodec;
+    private final OutboundBackpressure outboundBackpressure;
+    private final PresenceSubscriptions presenceSubscriptions;
+    private final PresenceService presenceService;
+    private final TypingCoalescer typingCoalescer;
 
     public void handleLogin(ChannelHandlerContext ctx, Packet packet) {
         try {
-            LoginData loginData = objectMapper.convertValue(packet.getData(), LoginData.class);
+            LoginData loginData = packet.getData() instanceof LoginData typed
+                    ? typed
+                    : objectMapper.convertValue(packet.getData(), LoginData.class);
 
             // Validate JWT token
             JwtTokenValidator.TokenInfo tokenInfo = jwtTokenValidator.validateToken(loginData.getToken());
@@ -46,14 +59,10 @@ public class MessageProcessor {
                     return;
                 }
 
-                // Check if this is the first device for this user
-                var existingSessions = sessionManager.getSessionsByUserId(userId);
-                boolean isFirstDevice = existingSessions.isEmpty();
-
                 sessionManager.addSession(ctx.channel(), userId, deviceId, loginData.getDeviceType());
 
-                // Publish online status to Redis for other services
-                redisTemplate.opsForSet().add("online:users", userId.toString());
+                // Route the device here and mark the user online; first device across the cluster?
+                boolean isFirstDevice = sessionDirectory.register(userId, deviceId);
 
                 sendResponse(ctx, ProtocolType.LOGIN_RESPONSE, packet.getSeq(),
                         Map.of("success", true, "userId", userId));
@@ -98,7 +107,9 @@ public class MessageProcessor {
         }
 
         try {
-            ChatMessageData msgData = objectMapper.convertValue(packet.getData(), ChatMessageData.class);
+            ChatMessageData msgData = packet.getData() instanceof ChatMessageData typed
+                    ? typed
+                    : objectMapper.convertValue(packet.getData(), ChatMessageData.class);
 
             // Persist message to database via API call
             ApiClient.PersistMessageRequest persistRequest = new ApiClient.PersistMessageRequest(
@@ -131,16 +142,7 @@ public class MessageProcessor {
                             "serverTimestamp", persistResult.serverTimestamp(),
                             "success", true));
 
-            // Publish message to Redis for fan-out to all participants
-            String messageJson = objectMapper.writeValueAsString(Map.of(
-                    "type", "chat_message",
-                    "senderId", senderSession.getUserId(),
-                    "senderDeviceId", senderSession.getDeviceId(),
-                    "conversationId", msgData.getConversationId(),
-                    "msgId", persistResult.msgId(),
-                    "message", msgData
-            ));
-            redisTemplate.convertAndSend("im:messages", messageJson);
+            // Fan-out is published once by the API when the message is persisted
 
             log.debug("Message processed: clientMsgId={}, serverMsgId={}, from={}",
                     msgData.getMsgId(), persistResult.msgId(), senderSession.getUserId());
@@ -159,12 +161,20 @@ public class MessageProcessor {
             @SuppressWarnings("unchecked")
             Map<String, Object> data = (Map<String, Object>) packet.getData();
             Long conversationId = ((Number) data.get("conversationId")).longValue();
+            // Clients send typing=false when the user stops; absent means typing
+            boolean typing = !Boolean.FALSE.equals(data.get("typing"));
+
+            // Repeated keystrokes within the publish interval are dropped here
+            if (!typingCoalescer.shouldPublish(session.getUserId(), conversationId, typing)) {
+                return;
+            }
 
             // Publish typing notification to Redis
             String typingJson = objectMapper.writeValueAsString(Map.of(
                     "type", "typing",
                     "userId", session.getUserId(),
-                    "conversationId", conversationId
+                    "conversationId", conversationId,
+                    "typing", typing
             ));
             redisTemplate.convertAndSend("im:typing", typingJson);
         } catch (Exception e) {
@@ -256,7 +266,7 @@ public class MessageProcessor {
                     "msgId", msgId,
                     "conversationId", conversationId != null ? conversationId : 0
             ));
-            redisTemplate.convertAndSend("im:recall", recallJson);
+            eventPublisher.publish("im:recall", recallJson);
 
             log.info("Message recalled: userId={}, msgId={}", session.getUserId(), msgId);
         } catch (Exception e) {
@@ -410,15 +420,17 @@ public class MessageProcessor {
                 return;
             }
 
-            // Check online status from Redis
-            Map<Long, Boolean> statuses = new java.util.HashMap<>();
-            for (Long userId : userIds) {
-                Boolean isOnline = redisTemplate.opsForSet().isMember("online:users", userId.toString());
-                statuses.put(userId, isOnline != null && isOnline);
-            }
+            // One batched lookup for the whole list (local sessions and cache first)
+            Map<Long, Boolean> statuses = presenceService.getOnlineStatuses(userIds);
 
-            sendResponse(ctx, ProtocolType.ONLINE_STATUS_RESPONSE, packet.getSeq(),
-                    Map.of("success", true, "statuses", statuses));
+            if (Boolean.TRUE.equals(data.get("includeDevices"))) {
+                sendResponse(ctx, ProtocolType.ONLINE_STATUS_RESPONSE, packet.getSeq(),
+                        Map.of("success", true, "statuses", statuses,
+                                "devices", presenceService.getOnlineDevices(userIds)));
+            } else {
+                sendResponse(ctx, ProtocolType.ONLINE_STATUS_RESPONSE, packet.getSeq(),
+                        Map.of("success", true, "statuses", statuses));
+            }
 
             log.debug("Online status response sent: userId={}, checkedIds={}",
                     session.getUserId(), userIds.size());
@@ -446,8 +458,8 @@ public class MessageProcessor {
                     ? userIdNumbers.stream().map(Number::longValue).toList()
                     : List.of();
 
-            // Store subscriptions in session (or a separate subscription manager)
-            session.setSubscribedUserIds(userIds);
+            // Replaces any earlier subscription of this session
+            presenceSubscriptions.subscribe(session, userIds);
 
             log.debug("User {} subscribed to online status updates for {} users",
                     session.getUserId(), userIds.size());
@@ -457,40 +469,60 @@ public class MessageProcessor {
     }
 
     /**
-     * Broadcast online status change to all subscribers.
+     * Publish an online status change to every IM node; each node notifies its local subscribers.
      */
     public void broadcastOnlineStatusChange(Long userId, boolean isOnline) {
         try {
-            Packet statusPacket = Packet.of(ProtocolType.ONLINE_STATUS_CHANGE,
-                    Map.of("userId", userId, "isOnline", isOnline));
+            String presenceJson = objectMapper.writeValueAsString(Map.of(
+                    "userId", userId,
+                    "isOnline", isOnline
+            ));
+            redisTemplate.convertAndSend("im:presence", presenceJson);
+        } catch (Exception e) {
+            log.error("Failed to publish online status change", e);
+        }
+    }
 
-            // Get all sessions and check if they're subscribed to this user
-            var allSessions = sessionManager.getAllSessions();
-            for (UserSession session : allSessions) {
-                // Don't send to the user themselves
-                if (session.getUserId().equals(userId)) continue;
+    /**
+     * Deliver an online status change to the sessions on this node that subscribed to the user.
+     */
+    public void deliverOnlineStatusChange(Long userId, boolean isOnline) {
+        var subscribers = presenceSubscriptions.getSubscribers(userId);
+        if (subscribers.isEmpty()) {
+            return;
+        }
 
-                // Check if subscribed to this user's status
-                List<Long> subscribedIds = session.getSubscribedUserIds();
-                if (subscribedIds != null && subscribedIds.contains(userId)) {
-                    sendPacket(session, statusPacket);
+        Packet statusPacket = Packet.of(ProtocolType.ONLINE_STATUS_CHANGE,
+                Map.of("userId", userId, "isOnline", isOnline));
+        try (PacketCodec.SharedFrame frame = packetCodec.share(statusPacket)) {
+            for (UserSession session : subscribers) {
+                // Don't send to the user themselves
+                if (!session.getUserId().equals(userId)) {
+                    sendShared(session, frame);
                 }
             }
-
-            log.debug("Broadcasted online status change: userId={}, isOnline={}", userId, isOnline);
-        } catch (Exception e) {
-            log.error("Failed to broadcast online status change", e);
         }
+
+        log.debug("Delivered online status change: userId={}, isOnline={}, subscribers={}",
+                userId, isOnline, subscribers.size());
     }
 
     public void handleDisconnect(UserSession session) {
         Long userId = session.getUserId();
+        presenceSubscriptions.unsubscribeAll(session);
+
+        // The device logged in again on this node before the old channel closed:
+        // its route and online flag belong to the new session
+        UserSession current = sessionManager.getSession(userId, session.getDeviceId());
+        if (current != null && current != session) {
+            log.info("Superseded session closed: userId={}, deviceId={}", userId, session.getDeviceId());
+            return;
+        }
 
-        // Remove from Redis online set if no other devices
-        var remainingSessions = sessionManager.getSessionsByUserId(userId);
-        if (remainingSessions.size() <= 1) {
-            redisTemplate.opsForSet().remove("online:users", userId.toString());
+        // Drops the route and, after the user's last device in the cluster, the online flag
+        boolean wasLastDevice = sessionDirectory.unregister(userId, session.getDeviceId());
 
+        if (wasLastDevice) {
             // Broadcast offline status to subscribers
             broadcastOnlineStatusChange(userId, false);
         }
@@ -523,10 +555,40 @@ public class MessageProcessor {
         }
     }
 
+    /**
+     * Send the same packet to every session of the given users, serializing it only once per wire format.
+     */
+    public void sendToUsers(Collection<Long> userIds, Packet packet) {
+        try (PacketCodec.SharedFrame frame = packetCodec.share(packet)) {
+            for (Long userId : userIds) {
+                for (UserSession session : sessionManager.getSessionsByUserId(userId)) {
+                    sendShared(session, frame);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a shared fan-out frame to a session in the session's negotiated wire format.
+     * The caller owns the {@link PacketCodec.SharedFrame} and closes it after the last recipient.
+     */
+    public void sendShared(UserSession session, PacketCodec.SharedFrame frame) {
+        try {
+            Channel channel = session.getChannel();
+            if (outboundBackpressure.admit(channel, frame.getPacket())) {
+                channel.writeAndFlush(frame.frameFor(packetCodec.formatOf(channel)));
+            }
+        } catch (Exception e) {
+            log.error("Failed to send packet to user {}", session.getUserId(), e);
+        }
+    }
+
     private void sendPacket(UserSession session, Packet packet) {
         try {
-            String json = objectMapper.writeValueAsString(packet);
-            session.getChannel().writeAndFlush(new TextWebSocketFrame(json));
+            Channel channel = session.getChannel();
+            if (outboundBackpressure.admit(channel, packet)) {
+                channel.writeAndFlush(packetCodec.encode(packet, packetCodec.formatOf(channel)));
+            }
         } catch (Exception e) {
             log.error("Failed to send packet to user {}", session.getUserId(), e);
         }
@@ -535,8 +597,9 @@ public class MessageProcessor {
     private void sendResponse(ChannelHandlerContext ctx, int type, String seq, Object data) {
         try {
             Packet response = Packet.response(type, seq, data);
-            String json = objectMapper.writeValueAsString(response);
-            ctx.writeAndFlush(new TextWebSocketFrame(json));
+            if (outboundBackpressure.admit(ctx.channel(), response)) {
+                ctx.writeAndFlush(packetCodec.encode(response, packetCodec.formatOf(ctx.channel())));
+            }
         } catch (Exception e) {
             log.error("Failed to send response", e);
         }
@@ -0,0 +1,77 @@
+package com.lumichat.im.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lumichat.im.client.ApiClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local cache of conversation participant lists.
+ * Entries are bounded by count and expire after a TTL; the API server publishes
+ * on {@code im:participants} whenever membership changes so entries are dropped early.
+ * Empty results (API errors, unknown conversations) are never cached.
+ */
+@Slf4j
+@Component
+public class ParticipantCache {
+
+    private final ApiClient apiClient;
+    private final Cache<Long, List<Long>> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ParticipantCache(
+            ApiClient apiClient,
+            @Value("${im.participant-cache.max-size:10000}") long maxSize,
+            @Value("${im.participant-cache.ttl:60000}") long ttlMs) {
+        this.apiClient = apiClient;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+    }
+
+    public List<Long> getParticipants(Long conversationId) {
+        List<Long> participants = cache.get(conversationId, id -> {
+            List<Long> loaded = apiClient.getConversationParticipants(id);
+            return loaded.isEmpty() ? null : List.copyOf(loaded);
+        });
+        return participants != null ? participants : List.of();
+    }
+
+    public void invalidate(Long conversationId) {
+        cache.invalidate(conversationId);
+        invalidations.incrementAndGet();
+        log.debug("Participant cache invalidated for conversation {}", conversationId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Hit/miss/eviction counters for sizing the cache.
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("invalidations", invalidations.get());
+        result.put("loadFailures", stats.loadFailureCount());
+        return result;
+    }
+}
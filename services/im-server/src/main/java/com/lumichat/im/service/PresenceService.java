@@ -0,0 +1,142 @@
+package com.lumichat.im.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lumichat.im.session.ClusterSessionDirectory;
+import com.lumichat.im.session.SessionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batched online-status lookups.
+ *
+ * Users with a session on this node are answered locally. The rest are looked
+ * up in a short-TTL local cache. Anything still missing costs one
+ * {@code SMISMEMBER} on {@code online:users}, whatever the number of ids. The
+ * cache is also refreshed from {@code im:presence} change events. Per-device
+ * presence comes from the route hashes kept by {@link ClusterSessionDirectory},
+ * read in a single pipeline.
+ */
+@Component
+public class PresenceService {
+
+    private final StringRedisTemplate redisTemplate;
+    private final SessionManager sessionManager;
+    private final Cache<Long, Boolean> cache;
+
+    public PresenceService(
+            StringRedisTemplate redisTemplate,
+            SessionManager sessionManager,
+            @Value("${im.presence.cache-max-size:100000}") long maxSize,
+            @Value("${im.presence.cache-ttl:3000}") long ttlMs) {
+        this.redisTemplate = redisTemplate;
+        this.sessionManager = sessionManager;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+    }
+
+    public Map<Long, Boolean> getOnlineStatuses(Collection<Long> userIds) {
+        Map<Long, Boolean> statuses = new LinkedHashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long userId : userIds) {
+            if (sessionManager.isUserOnline(userId)) {
+                statuses.put(userId, true);
+                continue;
+            }
+            Boolean cached = cache.getIfPresent(userId);
+            if (cached != null) {
+                statuses.put(userId, cached);
+            } else {
+                misses.add(userId);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            Map<Object, Boolean> found = lookup(misses);
+            for (Long userId : misses) {
+                boolean online = found != null && Boolean.TRUE.equals(found.get(String.valueOf(userId)));
+                cache.put(userId, online);
+                statuses.put(userId, online);
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * The users that are online anywhere in the cluster, read straight from
+     * {@code online:users} without the cache, for decisions such as skipping
+     * the offline queue that must not act on a stale answer.
+     */
+    public Set<Long> getOnlineUsers(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+        Map<Object, Boolean> found = lookup(userIds);
+        Set<Long> online = new HashSet<>();
+        for (Long userId : userIds) {
+            if (found != null && Boolean.TRUE.equals(found.get(String.valueOf(userId)))) {
+                online.add(userId);
+            }
+        }
+        return online;
+    }
+
+    private Map<Object, Boolean> lookup(Collection<Long> userIds) {
+        Object[] members = userIds.stream().map(String::valueOf).toArray();
+        return redisTemplate.opsForSet().isMember(ClusterSessionDirectory.ONLINE_USERS_KEY, members);
+    }
+
+    /**
+     * Online device ids per user, cluster-wide. Users without online devices are omitted.
+     */
+    public Map<Long, List<String>> getOnlineDevices(List<Long> userIds) {
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long userId : userIds) {
+                conn.hKeys(ClusterSessionDirectory.ROUTE_KEY_PREFIX + userId);
+            }
+            return null;
+        });
+
+        Map<Long, List<String>> devices = new LinkedHashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            if (results.get(i) instanceof Set<?> keys && !keys.isEmpty()) {
+                devices.put(userIds.get(i), keys.stream().map(String::valueOf).toList());
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * Apply a presence change event so cached answers don't wait for the TTL.
+     */
+    public void onStatusChange(Long userId, boolean isOnline) {
+        cache.put(userId, isOnline);
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        return result;
+    }
+}
@@ -0,0 +1,53 @@
+package com.lumichat.im.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Publishes fan-out events that must survive an IM server restart (recalls).
+ * Mirrors the API's publisher: {@code im.delivery.publish} selects
+ * {@code pubsub}, {@code streams} ({@code XADD} to {@code {channel}:stream}
+ * with approximate MAXLEN trimming) or {@code both}.
+ */
+@Component
+public class RealtimeEventPublisher {
+
+    public static final String STREAM_SUFFIX = ":stream";
+    public static final String PAYLOAD_FIELD = "payload";
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean pubSub;
+    private final boolean streams;
+    private final long streamMaxLen;
+
+    public RealtimeEventPublisher(
+            StringRedisTemplate redisTemplate,
+            @Value("${im.delivery.publish:pubsub}") String delivery,
+            @Value("${im.delivery.stream-max-len:100000}") long streamMaxLen) {
+        this.redisTemplate = redisTemplate;
+        this.pubSub = !"streams".equalsIgnoreCase(delivery);
+        this.streams = "streams".equalsIgnoreCase(delivery) || "both".equalsIgnoreCase(delivery);
+        this.streamMaxLen = streamMaxLen;
+    }
+
+    public void publish(String channel, String json) {
+        if (pubSub) {
+            redisTemplate.convertAndSend(channel, json);
+        }
+        if (streams) {
+            byte[] key = (channel + STREAM_SUFFIX).getBytes(StandardCharsets.UTF_8);
+            Map<byte[], byte[]> body = Map.of(
+                    PAYLOAD_FIELD.getBytes(StandardCharsets.UTF_8), json.getBytes(StandardCharsets.UTF_8));
+            redisTemplate.execute((RedisCallback<Object>) connection -> connection.streamCommands().xAdd(
+                    StreamRecords.rawBytes(body).withStreamKey(key),
+                    XAddOptions.maxlen(streamMaxLen).approximateTrimming(true)));
+        }
+    }
+}
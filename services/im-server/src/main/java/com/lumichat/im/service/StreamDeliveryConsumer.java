@@ -0,0 +1,266 @@
+package com.lumichat.im.service;
+
+import com.lumichat.im.session.ClusterSessionDirectory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamMessageListenerContainerOptions;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamReadRequest;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable delivery backend: consumes message, recall and reaction events from
+ * Redis Streams instead of pub/sub ({@code im.delivery.backend=streams}).
+ *
+ * Each node reads through its own consumer group (named after the node id), so
+ * every node sees every entry on the shared streams and only its own entries on
+ * {@code im:node:{nodeId}:stream}. Entries are acknowledged only once the listener
+ * has handed them to the local sessions. A failed entry stays pending and is
+ * claimed again after {@code im.delivery.stream-reclaim-interval}; after
+ * {@code im.delivery.stream-max-deliveries} attempts it is logged and dropped.
+ * On startup the node first replays entries it had read but not acknowledged,
+ * then resumes from the group's last position, which covers whatever was
+ * published while it was down. That catch-up needs the same group on every
+ * start, so this backend refuses to start without {@code im.cluster.node-id}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "im.delivery.backend", havingValue = "streams")
+public class StreamDeliveryConsumer {
+
+    private final RedisConnectionFactory connectionFactory;
+    private final StringRedisTemplate redisTemplate;
+    private final String group;
+    private final Map<String, MessageListener> listeners = new LinkedHashMap<>();
+    private final int batchSize;
+    private final Duration pollTimeout;
+    private final Duration reclaimInterval;
+    private final long maxDeliveries;
+    private final ScheduledExecutorService reclaimer;
+
+    private StreamMessageListenerContainer<String, MapRecord<String, String, String>> container;
+
+    public StreamDeliveryConsumer(
+            RedisConnectionFactory connectionFactory,
+            StringRedisTemplate redisTemplate,
+            ClusterSessionDirectory sessionDirectory,
+            @Value("${im.cluster.node-id:}") String configuredNodeId,
+            @Qualifier("messageListener") MessageListener messageListener,
+            @Qualifier("recallListener") MessageListener recallListener,
+            @Qualifier("reactionListener") MessageListener reactionListener,
+            @Value("${im.delivery.stream-batch-size:100}") int batchSize,
+            @Value("${im.delivery.stream-poll-timeout:2000}") long pollTimeoutMs,
+            @Value("${im.delivery.stream-reclaim-interval:30000}") long reclaimIntervalMs,
+            @Value("${im.delivery.stream-max-deliveries:5}") long maxDeliveries) {
+        // A generated node id names a new consumer group on every start, which begins at the
+        // tail and leaves the previous group's backlog unread
+        if (configuredNodeId == null || configuredNodeId.isBlank()) {
+            throw new IllegalStateException(
+                    "im.delivery.backend=streams requires a stable im.cluster.node-id (IM_NODE_ID)");
+        }
+        this.connectionFactory = connectionFactory;
+        this.redisTemplate = redisTemplate;
+        this.group = sessionDirectory.getNodeId();
+        this.batchSize = batchSize;
+        this.pollTimeout = Duration.ofMillis(pollTimeoutMs);
+        this.reclaimInterval = Duration.ofMillis(reclaimIntervalMs);
+        this.maxDeliveries = maxDeliveries;
+        this.reclaimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stream-reclaim");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        listeners.put("im:messages", messageListener);
+        listeners.put(sessionDirectory.getNodeChannel(), messageListener);
+        listeners.put("im:recall", recallListener);
+        listeners.put("im:reactions", reactionListener);
+    }
+
+    @PostConstruct
+    public void start() {
+        StreamMessageListenerContainerOptions<String, MapRecord<String, String, String>> options =
+                StreamMessageListenerContainerOptions.builder()
+                        .batchSize(batchSize)
+                        .pollTimeout(pollTimeout)
+                        .serializer(StringRedisSerializer.UTF_8)
+                        .errorHandler(e -> log.error("Stream delivery poll failed", e))
+                        .build();
+        container = StreamMessageListenerContainer.create(connectionFactory, options);
+
+        Consumer consumer = Consumer.from(group, group);
+        listeners.forEach((channel, listener) -> {
+            String key = channel + RealtimeEventPublisher.STREAM_SUFFIX;
+            ensureGroup(key);
+            replayPending(key, channel, listener, consumer);
+
+            container.register(StreamReadRequest.builder(StreamOffset.create(key, ReadOffset.lastConsumed()))
+                            .consumer(consumer)
+                            .autoAcknowledge(false)
+                            .cancelOnError(e -> false)
+                            .build(),
+                    record -> deliver(key, channel, listener,
+                            record.getValue().get(RealtimeEventPublisher.PAYLOAD_FIELD), record.getId().getValue()));
+        });
+
+        container.start();
+        reclaimer.scheduleWithFixedDelay(this::reclaimStale,
+                reclaimInterval.toMillis(), reclaimInterval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Stream delivery started: group={}, streams={}", group, listeners.keySet());
+    }
+
+    @PreDestroy
+    public void stop() {
+        reclaimer.shutdownNow();
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    private void ensureGroup(String key) {
+        try {
+            // New groups start at the tail; a restarted node keeps its existing position
+            redisTemplate.opsForStream().createGroup(key, ReadOffset.latest(), group);
+        } catch (RuntimeException e) {
+            if (!isBusyGroup(e)) {
+                throw e;
+            }
+        }
+    }
+
+    private static boolean isBusyGroup(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("BUSYGROUP")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Re-deliver entries this node read before a crash or restart but never acknowledged.
+     */
+    private void replayPending(String key, String channel, MessageListener listener, Consumer consumer) {
+        String lastId = "0";
+        int replayed = 0;
+        while (true) {
+            List<MapRecord<String, Object, Object>> records = readGroup(
+                    consumer, StreamOffset.create(key, ReadOffset.from(lastId)));
+            if (records == null || records.isEmpty()) {
+                break;
+            }
+            for (MapRecord<String, Object, Object> record : records) {
+                Object payload = record.getValue().get(RealtimeEventPublisher.PAYLOAD_FIELD);
+                deliver(key, channel, listener, payload != null ? payload.toString() : null, record.getId().getValue());
+                lastId = record.getId().getValue();
+                replayed++;
+            }
+        }
+        if (replayed > 0) {
+            log.info("Replayed {} pending entries from {}", replayed, key);
+        }
+    }
+
+    // StreamOperations.read only takes generic varargs; a single offset is safe to pass
+    @SuppressWarnings("unchecked")
+    private List<MapRecord<String, Object, Object>> readGroup(Consumer consumer, StreamOffset<String> offset) {
+        return redisTemplate.opsForStream().read(consumer, StreamReadOptions.empty().count(batchSize), offset);
+    }
+
+    /**
+     * Retry entries that stayed pending past the reclaim interval because their
+     * delivery failed, dropping those that already failed too often.
+     */
+    private void reclaimStale() {
+        listeners.forEach((channel, listener) -> {
+            String key = channel + RealtimeEventPublisher.STREAM_SUFFIX;
+            try {
+                reclaim(key, channel, listener);
+            } catch (Exception e) {
+                log.warn("Failed to reclaim pending entries from {}: {}", key, e.getMessage());
+            }
+        });
+    }
+
+    // Spring Data Redis has no XAUTOCLAIM; XPENDING gives the delivery counts, XCLAIM takes the entries back
+    private void reclaim(String key, String channel, MessageListener listener) {
+        PendingMessages pending = redisTemplate.opsForStream().pending(key, group, Range.unbounded(), batchSize);
+        List<RecordId> retry = new ArrayList<>();
+        for (PendingMessage entry : pending) {
+            if (entry.getElapsedTimeSinceLastDelivery().compareTo(reclaimInterval) < 0) {
+                continue;
+            }
+            if (entry.getTotalDeliveryCount() >= maxDeliveries) {
+                log.error("Dropping stream entry {} from {} after {} failed deliveries",
+                        entry.getIdAsString(), key, entry.getTotalDeliveryCount());
+                redisTemplate.opsForStream().acknowledge(key, group, entry.getId());
+            } else {
+                retry.add(entry.getId());
+            }
+        }
+        if (retry.isEmpty()) {
+            return;
+        }
+
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                .claim(key, group, group, reclaimInterval, retry.toArray(new RecordId[0]));
+        Set<RecordId> claimed = new HashSet<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            claimed.add(record.getId());
+            Object payload = record.getValue().get(RealtimeEventPublisher.PAYLOAD_FIELD);
+            deliver(key, channel, listener, payload != null ? payload.toString() : null, record.getId().getValue());
+        }
+        // Entries trimmed from the stream since they were read can't be claimed any more
+        for (RecordId id : retry) {
+            if (!claimed.contains(id)) {
+                redisTemplate.opsForStream().acknowledge(key, group, id);
+            }
+        }
+        log.info("Retried {} pending entries from {}", claimed.size(), key);
+    }
+
+    private void deliver(String key, String channel, MessageListener listener, String payload, String recordId) {
+        if (payload != null) {
+            try {
+                listener.onMessage(new DefaultMessage(
+                        channel.getBytes(StandardCharsets.UTF_8),
+                        payload.getBytes(StandardCharsets.UTF_8)), null);
+            } catch (Exception e) {
+                // Left pending; reclaimStale retries it until the delivery cap
+                log.warn("Failed to deliver stream entry {} from {}", recordId, key, e);
+                return;
+            }
+        }
+        redisTemplate.opsForStream().acknowledge(key, group, recordId);
+    }
+}
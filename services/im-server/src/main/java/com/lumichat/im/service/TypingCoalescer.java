@@ -0,0 +1,180 @@
+package com.lumichat.im.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lumichat.im.handler.OutboundBackpressure;
+import com.lumichat.im.protocol.Packet;
+import com.lumichat.im.protocol.PacketCodec;
+import com.lumichat.im.protocol.ProtocolType;
+import com.lumichat.im.session.SessionManager;
+import com.lumichat.im.session.UserSession;
+import io.netty.channel.Channel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Typing indicator coalescing at both edges.
+ *
+ * Ingress: a user's typing packets for a conversation reach {@code im:typing} at
+ * most once per {@code im.typing.publish-interval}. A "stopped" packet is only
+ * published after a "typing" state went out, and resets the window so the next
+ * keystroke is published straight away. The interval stays below the client's
+ * indicator timeout, so a steady typer keeps the indicator up.
+ *
+ * Egress: typing states for users connected to this node are buffered for
+ * {@code im.typing.batch-window} and written as a single {@code TYPING_NOTIFY}
+ * per recipient listing every state from that window; the latest state per
+ * typer and conversation wins.
+ */
+@Slf4j
+@Component
+public class TypingCoalescer {
+
+    record TypingKey(Long userId, Long conversationId) {}
+
+    private record Published(boolean typing, long atNanos) {}
+
+    private final SessionManager sessionManager;
+    private final PacketCodec packetCodec;
+    private final OutboundBackpressure outboundBackpressure;
+    private final long publishIntervalNanos;
+    private final long batchWindowMs;
+    private final Cache<TypingKey, Published> published;
+    private final Map<Long, Map<TypingKey, Boolean>> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder publishes = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+    private final LongAdder batchesSent = new LongAdder();
+    private final LongAdder statesSent = new LongAdder();
+
+    public TypingCoalescer(
+            SessionManager sessionManager,
+            PacketCodec packetCodec,
+            OutboundBackpressure outboundBackpressure,
+            @Value("${im.typing.publish-interval:2000}") long publishIntervalMs,
+            @Value("${im.typing.batch-window:200}") long batchWindowMs) {
+        this.sessionManager = sessionManager;
+        this.packetCodec = packetCodec;
+        this.outboundBackpressure = outboundBackpressure;
+        this.publishIntervalNanos = TimeUnit.MILLISECONDS.toNanos(publishIntervalMs);
+        this.batchWindowMs = batchWindowMs;
+        // Long enough that a "stopped" still finds the state it ends
+        this.published = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(publishIntervalMs * 5))
+                .build();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "im-typing-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.scheduleAtFixedRate(this::flush, batchWindowMs, batchWindowMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdownNow();
+    }
+
+    /**
+     * Whether a typing state from a local user should be published to the cluster.
+     */
+    public boolean shouldPublish(Long userId, Long conversationId, boolean typing) {
+        long now = System.nanoTime();
+        boolean[] publish = new boolean[1];
+        published.asMap().compute(new TypingKey(userId, conversationId), (key, last) -> {
+            boolean due = typing
+                    ? last == null || !last.typing() || now - last.atNanos() >= publishIntervalNanos
+                    : last != null && last.typing();
+            if (!due) {
+                return last;
+            }
+            publish[0] = true;
+            return new Published(typing, now);
+        });
+        if (publish[0]) {
+            publishes.increment();
+        } else {
+            suppressed.increment();
+        }
+        return publish[0];
+    }
+
+    /**
+     * Queue a typing state for the next batch of every recipient connected to this node.
+     */
+    public void enqueue(Long conversationId, Long userId, boolean typing, Collection<Long> recipients) {
+        TypingKey key = new TypingKey(userId, conversationId);
+        for (Long recipient : recipients) {
+            // Don't notify the user who is typing
+            if (recipient.equals(userId) || !sessionManager.isUserOnline(recipient)) {
+                continue;
+            }
+            pending.compute(recipient, (id, states) -> {
+                Map<TypingKey, Boolean> batch = states != null ? states : new LinkedHashMap<>();
+                batch.put(key, typing);
+                return batch;
+            });
+        }
+    }
+
+    void flush() {
+        for (Long recipient : pending.keySet()) {
+            Map<TypingKey, Boolean> batch = pending.remove(recipient);
+            if (batch == null || batch.isEmpty()) {
+                continue;
+            }
+            List<Map<String, Object>> states = new ArrayList<>(batch.size());
+            batch.forEach((key, typing) -> states.add(Map.of(
+                    "conversationId", key.conversationId(),
+                    "userId", key.userId(),
+                    "typing", typing)));
+            send(recipient, Packet.of(ProtocolType.TYPING_NOTIFY, Map.of("states", states)));
+            batchesSent.increment();
+            statesSent.add(states.size());
+        }
+    }
+
+    private void send(Long userId, Packet packet) {
+        try (PacketCodec.SharedFrame frame = packetCodec.share(packet)) {
+            for (UserSession session : sessionManager.getSessionsByUserId(userId)) {
+                Channel channel = session.getChannel();
+                if (outboundBackpressure.admit(channel, packet)) {
+                    channel.writeAndFlush(frame.frameFor(packetCodec.formatOf(channel)));
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to send typing batch to user {}", userId, e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("publishIntervalMs", TimeUnit.NANOSECONDS.toMillis(publishIntervalNanos));
+        stats.put("batchWindowMs", batchWindowMs);
+        stats.put("publishes", publishes.sum());
+        stats.put("suppressed", suppressed.sum());
+        stats.put("batchesSent", batchesSent.sum());
+        stats.put("statesSent", statesSent.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,349 @@
+package com.lumichat.im.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cluster-wide directory of which IM node holds each user's connections.
+ *
+ * Each user has a Redis hash {@code im:route:{userId}} mapping deviceId to the
+ * node id currently serving that device. Publishers read it to send fan-out
+ * events only to {@code im:node:{nodeId}} channels that actually hold recipients.
+ * Live nodes register themselves in the {@code im:nodes} set.
+ *
+ * The route hash doubles as per-device presence: a user is online while the
+ * hash has any entry, and {@code online:users} is kept in step with it by the
+ * same scripts, so a user stays online until their last device anywhere in the
+ * cluster disconnects.
+ *
+ * Every node also keeps {@code im:heartbeat:{nodeId}} alive with a TTL and lists
+ * its devices in {@code im:node-sessions:{nodeId}}. When a node stops renewing its
+ * heartbeat, whichever node reaps it first removes its routes, clears the online
+ * flag of users left without devices and publishes their offline status. A node
+ * that finds itself reaped (e.g. after a long pause) registers its sessions again.
+ */
+@Slf4j
+@Component
+public class ClusterSessionDirectory {
+
+    public static final String NODES_KEY = "im:nodes";
+    public static final String ROUTE_KEY_PREFIX = "im:route:";
+    public static final String NODE_CHANNEL_PREFIX = "im:node:";
+    public static final String ONLINE_USERS_KEY = "online:users";
+    public static final String HEARTBEAT_KEY_PREFIX = "im:heartbeat:";
+    public static final String NODE_SESSIONS_KEY_PREFIX = "im:node-sessions:";
+    public static final String PRESENCE_CHANNEL = "im:presence";
+
+    // Returns the number of devices the user now has online
+    private static final RedisScript<Long> REGISTER_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('SADD', KEYS[2], ARGV[3]) " +
+            "redis.call('SADD', KEYS[3], ARGV[3] .. ':' .. ARGV[1]) " +
+            "return redis.call('HLEN', KEYS[1])",
+            Long.class);
+
+    // Only remove the entry if it still points at this node; the device may
+    // already have reconnected through another node. The node-sessions member
+    // is left alone in that case too, since it is shared with any live session
+    // of the device on this node. Returns 1 when that was the user's last device.
+    private static final RedisScript<Long> UNREGISTER_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], ARGV[1]) ~= ARGV[2] then return 0 end " +
+            "redis.call('SREM', KEYS[3], ARGV[3] .. ':' .. ARGV[1]) " +
+            "redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "if redis.call('HLEN', KEYS[1]) == 0 then " +
+            "redis.call('SREM', KEYS[2], ARGV[3]) return 1 end " +
+            "return 0",
+            Long.class);
+
+    // Drops one chunk of a node's routes and returns the users that went offline.
+    // KEYS: heartbeat, node-sessions, online users, then one route key per device;
+    // ARGV: node id, then userId and deviceId per device. The heartbeat check runs
+    // inside the script, so a node that renews in the meantime keeps the rest of
+    // its routes; nil tells the caller to stop.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> REAP_CHUNK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return false end " +
+            "local offline = {} " +
+            "for i = 4, #KEYS do " +
+            "  local userId = ARGV[(i - 4) * 2 + 2] " +
+            "  local deviceId = ARGV[(i - 4) * 2 + 3] " +
+            "  if redis.call('HGET', KEYS[i], deviceId) == ARGV[1] then " +
+            "    redis.call('HDEL', KEYS[i], deviceId) " +
+            "    if redis.call('HLEN', KEYS[i]) == 0 then " +
+            "      redis.call('SREM', KEYS[3], userId) " +
+            "      table.insert(offline, userId) " +
+            "    end " +
+            "  end " +
+            "  redis.call('SREM', KEYS[2], userId .. ':' .. deviceId) " +
+            "end " +
+            "return offline",
+            List.class);
+
+    // Removes a reaped node from the directory unless it renewed its heartbeat
+    private static final RedisScript<Long> REAP_FINISH_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "redis.call('DEL', KEYS[2]) " +
+            "redis.call('SREM', KEYS[3], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    static final int REAP_CHUNK_SIZE = 100;
+
+    private final StringRedisTemplate redisTemplate;
+    private final SessionManager sessionManager;
+    private final ObjectMapper objectMapper;
+    private final String nodeId;
+    private final Duration heartbeatTtl;
+    private final long heartbeatIntervalMs;
+    private final long reapIntervalMs;
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder reregistrations = new LongAdder();
+    private final LongAdder nodesReaped = new LongAdder();
+    private final LongAdder usersReaped = new LongAdder();
+
+    public ClusterSessionDirectory(
+            StringRedisTemplate redisTemplate,
+            SessionManager sessionManager,
+            ObjectMapper objectMapper,
+            @Value("${im.cluster.node-id:}") String nodeId,
+            @Value("${im.cluster.heartbeat-interval:5000}") long heartbeatIntervalMs,
+            @Value("${im.cluster.heartbeat-ttl:15000}") long heartbeatTtlMs,
+            @Value("${im.cluster.reap-interval:10000}") long reapIntervalMs) {
+        this.redisTemplate = redisTemplate;
+        this.sessionManager = sessionManager;
+        this.objectMapper = objectMapper;
+        this.nodeId = nodeId == null || nodeId.isBlank()
+                ? UUID.randomUUID().toString().substring(0, 8)
+                : nodeId;
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.heartbeatTtl = Duration.ofMillis(heartbeatTtlMs);
+        this.reapIntervalMs = reapIntervalMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "im-cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        // A restart under a stable node id clears whatever the previous run left behind
+        redisTemplate.delete(HEARTBEAT_KEY_PREFIX + nodeId);
+        reap(nodeId);
+        redisTemplate.opsForValue().set(HEARTBEAT_KEY_PREFIX + nodeId, String.valueOf(System.currentTimeMillis()), heartbeatTtl);
+        redisTemplate.opsForSet().add(NODES_KEY, nodeId);
+        scheduler.scheduleAtFixedRate(this::heartbeat, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::reapDeadNodes, reapIntervalMs, reapIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("IM node registered in cluster directory: nodeId={}, heartbeatTtl={}ms",
+                nodeId, heartbeatTtl.toMillis());
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Channel this node listens on for events routed to its own users.
+     */
+    public String getNodeChannel() {
+        return NODE_CHANNEL_PREFIX + nodeId;
+    }
+
+    /**
+     * Route the device to this node and mark the user online.
+     *
+     * @return true if this is the user's first online device in the cluster
+     */
+    public boolean register(Long userId, String deviceId) {
+        try {
+            Long devices = redisTemplate.execute(REGISTER_SCRIPT, keys(userId), deviceId, nodeId, userId.toString());
+            return devices != null && devices == 1;
+        } catch (Exception e) {
+            log.error("Failed to register route for userId={}, deviceId={}", userId, deviceId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Remove the device's route if it still points here, marking the user offline after the last device.
+     *
+     * @return true if the user has no online device left in the cluster
+     */
+    public boolean unregister(Long userId, String deviceId) {
+        try {
+            Long last = redisTemplate.execute(UNREGISTER_SCRIPT, keys(userId), deviceId, nodeId, userId.toString());
+            return last != null && last == 1;
+        } catch (Exception e) {
+            log.error("Failed to unregister route for userId={}, deviceId={}", userId, deviceId, e);
+            return false;
+        }
+    }
+
+    private List<String> keys(Long userId) {
+        return List.of(ROUTE_KEY_PREFIX + userId, ONLINE_USERS_KEY, NODE_SESSIONS_KEY_PREFIX + nodeId);
+    }
+
+    /**
+     * Renew this node's heartbeat. If another node has reaped this one in the
+     * meantime, its local sessions are registered again.
+     */
+    void heartbeat() {
+        try {
+            redisTemplate.opsForValue().set(HEARTBEAT_KEY_PREFIX + nodeId, String.valueOf(System.currentTimeMillis()), heartbeatTtl);
+            Long added = redisTemplate.opsForSet().add(NODES_KEY, nodeId);
+            heartbeats.increment();
+            if (added != null && added == 1) {
+                log.warn("Node {} was reaped from the cluster directory, registering its sessions again", nodeId);
+                reregistrations.increment();
+                for (UserSession session : sessionManager.getAllSessions()) {
+                    if (register(session.getUserId(), session.getDeviceId())) {
+                        publishPresence(session.getUserId(), true);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to renew heartbeat for node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * Reap every registered node whose heartbeat has expired.
+     */
+    void reapDeadNodes() {
+        try {
+            Set<String> nodes = redisTemplate.opsForSet().members(NODES_KEY);
+            if (nodes == null) {
+                return;
+            }
+            for (String node : nodes) {
+                if (!node.equals(nodeId) && !Boolean.TRUE.equals(redisTemplate.hasKey(HEARTBEAT_KEY_PREFIX + node))) {
+                    reap(node);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to reap dead nodes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drop a node's routes from Java, a chunk of its node-sessions set at a time,
+     * so no single script walks every device of the node or touches keys it
+     * wasn't given.
+     */
+    private void reap(String node) {
+        List<String> offline = new ArrayList<>();
+        boolean renewed = false;
+        try (Cursor<String> members = redisTemplate.opsForSet().scan(NODE_SESSIONS_KEY_PREFIX + node,
+                ScanOptions.scanOptions().count(REAP_CHUNK_SIZE).build())) {
+            List<String> chunk = new ArrayList<>(REAP_CHUNK_SIZE);
+            while (!renewed && members.hasNext()) {
+                chunk.add(members.next());
+                if (chunk.size() == REAP_CHUNK_SIZE || !members.hasNext()) {
+                    List<?> dropped = reapChunk(node, chunk);
+                    if (dropped == null) {
+                        renewed = true;
+                    } else {
+                        dropped.forEach(userId -> offline.add(String.valueOf(userId)));
+                    }
+                    chunk.clear();
+                }
+            }
+        } finally {
+            // Users already dropped are offline even if the rest of the reap didn't happen
+            usersReaped.add(offline.size());
+            for (String userId : offline) {
+                publishPresence(Long.valueOf(userId), false);
+            }
+        }
+
+        if (renewed) {
+            log.info("Node {} renewed its heartbeat while being reaped, {} users marked offline", node, offline.size());
+            return;
+        }
+        Long removed = redisTemplate.execute(REAP_FINISH_SCRIPT,
+                List.of(HEARTBEAT_KEY_PREFIX + node, NODE_SESSIONS_KEY_PREFIX + node, NODES_KEY), node);
+        if (removed == null || removed == 0 || node.equals(nodeId)) {
+            return;
+        }
+        nodesReaped.increment();
+        log.info("Reaped node {}: {} users marked offline", node, offline.size());
+    }
+
+    private List<?> reapChunk(String node, List<String> members) {
+        List<String> keys = new ArrayList<>(members.size() + 3);
+        keys.add(HEARTBEAT_KEY_PREFIX + node);
+        keys.add(NODE_SESSIONS_KEY_PREFIX + node);
+        keys.add(ONLINE_USERS_KEY);
+        List<String> args = new ArrayList<>(members.size() * 2 + 1);
+        args.add(node);
+        for (String member : members) {
+            // Members are userId:deviceId; the device id may contain ':' itself
+            int sep = member.indexOf(':');
+            keys.add(ROUTE_KEY_PREFIX + member.substring(0, sep));
+            args.add(member.substring(0, sep));
+            args.add(member.substring(sep + 1));
+        }
+        return redisTemplate.execute(REAP_CHUNK_SCRIPT, keys, args.toArray());
+    }
+
+    private void publishPresence(Long userId, boolean isOnline) {
+        try {
+            redisTemplate.convertAndSend(PRESENCE_CHANNEL, objectMapper.writeValueAsString(Map.of(
+                    "userId", userId,
+                    "isOnline", isOnline
+            )));
+        } catch (Exception e) {
+            log.error("Failed to publish online status change for userId={}", userId, e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("heartbeatTtlMs", heartbeatTtl.toMillis());
+        stats.put("heartbeats", heartbeats.sum());
+        stats.put("reregistrations", reregistrations.sum());
+        stats.put("nodesReaped", nodesReaped.sum());
+        stats.put("usersReaped", usersReaped.sum());
+        return stats;
+    }
+
+    /**
+     * Leave the cluster: drop the heartbeat and reap this node's own routes,
+     * so users without devices elsewhere go offline straight away.
+     */
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        try {
+            redisTemplate.delete(HEARTBEAT_KEY_PREFIX + nodeId);
+            reap(nodeId);
+            log.info("IM node removed from cluster directory: nodeId={}", nodeId);
+        } catch (Exception e) {
+            log.warn("Failed to remove node {} from cluster directory: {}", nodeId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.lumichat.im.session;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reverse index of online-status subscriptions on this node: watched user id
+ * to the local sessions that subscribed to it. A status change only touches
+ * the sessions watching that user instead of scanning every session.
+ *
+ * Each session's own list stays in {@link UserSession#getSubscribedUserIds()}
+ * so a resubscribe or disconnect can remove exactly its entries. Updates for a
+ * session run on that channel's dispatch queue, so they never race each other.
+ */
+@Component
+public class PresenceSubscriptions {
+
+    private final Map<Long, Set<UserSession>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriptionCount = new AtomicInteger();
+
+    /**
+     * Replace the session's subscriptions with the given user ids.
+     */
+    public void subscribe(UserSession session, Collection<Long> userIds) {
+        unsubscribeAll(session);
+        List<Long> watched = userIds.stream().distinct().toList();
+        for (Long userId : watched) {
+            subscribers.compute(userId, (id, sessions) -> {
+                Set<UserSession> set = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+                set.add(session);
+                return set;
+            });
+        }
+        subscriptionCount.addAndGet(watched.size());
+        session.setSubscribedUserIds(watched);
+    }
+
+    /**
+     * Drop every subscription held by the session, e.g. when it disconnects.
+     */
+    public void unsubscribeAll(UserSession session) {
+        List<Long> watched = session.getSubscribedUserIds();
+        if (watched == null || watched.isEmpty()) {
+            return;
+        }
+        for (Long userId : watched) {
+            subscribers.computeIfPresent(userId, (id, sessions) -> {
+                sessions.remove(session);
+                return sessions.isEmpty() ? null : sessions;
+            });
+        }
+        subscriptionCount.addAndGet(-watched.size());
+        session.setSubscribedUserIds(null);
+    }
+
+    public Set<UserSession> getSubscribers(Long userId) {
+        return subscribers.getOrDefault(userId, Set.of());
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "watchedUsers", subscribers.size(),
+                "subscriptions", subscriptionCount.get());
+    }
+}
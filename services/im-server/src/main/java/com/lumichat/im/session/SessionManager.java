@@ -1,24 +1,51 @@
 package com.lumichat.im.session;
 
 import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
-
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Registry of the WebSocket sessions on this node.
+ *
+ * The session for a channel lives in a channel attribute, so the per-packet
+ * {@link #getSessionByChannel} lookup is a field read rather than a hash of the
+ * channel id string. Idle connections are closed by
+ * {@link com.lumichat.im.handler.LivenessTracker}. User lookups go through a striped primitive
+ * {@code long -> UserSession[]} map; each user's devices are a small
+ * copy-on-write array, replaced under the stripe's write lock, so readers can
+ * iterate it without locking.
+ */
 @Slf4j
 @Component
 public class SessionManager {
 
-    // Channel ID -> UserSession
-    private final Map<String, UserSession> channelSessions = new ConcurrentHashMap<>();
+    public static final AttributeKey<UserSession> SESSION = AttributeKey.valueOf("im.session");
+
+    private static final int STRIPES = 64;  // power of two
+    private static final UserSession[] NO_SESSIONS = new UserSession[0];
 
-    // User ID -> DeviceId -> UserSession (for multi-device support)
-    private final Map<Long, Map<String, UserSession>> userSessions = new ConcurrentHashMap<>();
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger userCount = new AtomicInteger();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+
+    public SessionManager() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
 
     public void addSession(Channel channel, Long userId, String deviceId, String deviceType) {
         UserSession session = UserSession.builder()
@@ -27,74 +54,155 @@ public class SessionManager {
                 .deviceType(deviceType)
                 .channel(channel)
                 .connectedAt(Instant.now())
-                .lastActiveAt(Instant.now())
                 .build();
 
-        channelSessions.put(channel.id().asLongText(), session);
-        userSessions.computeIfAbsent(userId, k -> new ConcurrentHashMap<>())
-                .put(deviceId, session);
+        channel.attr(SESSION).set(session);
+
+        long id = userId;
+        Stripe stripe = stripeOf(id);
+        long stamp = stripe.lock.writeLock();
+        try {
+            UserSession[] devices = stripe.users.get(id);
+            if (devices == null) {
+                stripe.users.put(id, new UserSession[]{session});
+                userCount.incrementAndGet();
+                sessionCount.incrementAndGet();
+            } else {
+                int index = indexOf(devices, deviceId);
+                UserSession[] updated;
+                if (index >= 0) {
+                    // Same device reconnected: the new channel replaces the old one
+                    updated = devices.clone();
+                    updated[index] = session;
+                } else {
+                    updated = Arrays.copyOf(devices, devices.length + 1);
+                    updated[devices.length] = session;
+                    sessionCount.incrementAndGet();
+                }
+                stripe.users.put(id, updated);
+            }
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
 
-        log.info("Session added: userId={}, deviceId={}, channelId={}",
-                userId, deviceId, channel.id().asShortText());
+        log.info("Session added: userId={}, deviceId={}", userId, deviceId);
     }
 
     public void removeSession(Channel channel) {
-        UserSession session = channelSessions.remove(channel.id().asLongText());
-        if (session != null) {
-            Map<String, UserSession> devices = userSessions.get(session.getUserId());
-            if (devices != null) {
-                devices.remove(session.getDeviceId());
-                if (devices.isEmpty()) {
-                    userSessions.remove(session.getUserId());
+        UserSession session = channel.attr(SESSION).getAndSet(null);
+        if (session == null) {
+            return;
+        }
+
+        long userId = session.getUserId();
+        Stripe stripe = stripeOf(userId);
+        long stamp = stripe.lock.writeLock();
+        try {
+            UserSession[] devices = stripe.users.get(userId);
+            int index = devices != null ? indexOf(devices, session) : -1;
+            if (index >= 0) {
+                if (devices.length == 1) {
+                    stripe.users.remove(userId);
+                    userCount.decrementAndGet();
+                } else {
+                    UserSession[] updated = new UserSession[devices.length - 1];
+                    System.arraycopy(devices, 0, updated, 0, index);
+                    System.arraycopy(devices, index + 1, updated, index, devices.length - index - 1);
+                    stripe.users.put(userId, updated);
                 }
+                sessionCount.decrementAndGet();
             }
-            log.info("Session removed: userId={}, deviceId={}",
-                    session.getUserId(), session.getDeviceId());
+        } finally {
+            stripe.lock.unlockWrite(stamp);
         }
+
+        log.info("Session removed: userId={}, deviceId={}",
+                session.getUserId(), session.getDeviceId());
     }
 
     public UserSession getSessionByChannel(Channel channel) {
-        return channelSessions.get(channel.id().asLongText());
+        return channel.attr(SESSION).get();
     }
 
+    /**
+     * Read-only view of the user's sessions on this node.
+     */
     public Collection<UserSession> getSessionsByUserId(Long userId) {
-        Map<String, UserSession> devices = userSessions.get(userId);
-        return devices != null ? devices.values() : java.util.Collections.emptyList();
+        UserSession[] devices = devicesOf(userId);
+        return devices.length == 0 ? Collections.emptyList() : Arrays.asList(devices);
     }
 
     public UserSession getSession(Long userId, String deviceId) {
-        Map<String, UserSession> devices = userSessions.get(userId);
-        return devices != null ? devices.get(deviceId) : null;
-    }
-
-    public void updateLastActive(Channel channel) {
-        UserSession session = channelSessions.get(channel.id().asLongText());
-        if (session != null) {
-            session.updateLastActive();
-        }
+        UserSession[] devices = devicesOf(userId);
+        int index = indexOf(devices, deviceId);
+        return index >= 0 ? devices[index] : null;
     }
 
     public boolean isUserOnline(Long userId) {
-        return userSessions.containsKey(userId) && !userSessions.get(userId).isEmpty();
+        return devicesOf(userId).length > 0;
     }
 
     public int getOnlineUserCount() {
-        return userSessions.size();
+        return userCount.get();
+    }
+
+    public int getSessionCount() {
+        return sessionCount.get();
     }
 
+    /**
+     * Snapshot of every session on this node. Walks all stripes, so keep it off hot paths.
+     */
     public Collection<UserSession> getAllSessions() {
-        return channelSessions.values();
+        List<UserSession> all = new ArrayList<>(sessionCount.get());
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                for (UserSession[] devices : stripe.users.values()) {
+                    Collections.addAll(all, devices);
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return all;
     }
 
-    public void cleanInactiveSessions(long timeoutMs) {
-        var inactiveSessions = channelSessions.values().stream()
-                .filter(s -> !s.isActive(timeoutMs))
-                .collect(Collectors.toList());
+    private UserSession[] devicesOf(long userId) {
+        Stripe stripe = stripeOf(userId);
+        long stamp = stripe.lock.readLock();
+        try {
+            UserSession[] devices = stripe.users.get(userId);
+            return devices != null ? devices : NO_SESSIONS;
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    private Stripe stripeOf(long userId) {
+        return stripes[Long.hashCode(userId) & (STRIPES - 1)];
+    }
 
-        for (UserSession session : inactiveSessions) {
-            log.warn("Cleaning inactive session: userId={}, deviceId={}",
-                    session.getUserId(), session.getDeviceId());
-            session.getChannel().close();
+    private static int indexOf(UserSession[] devices, String deviceId) {
+        for (int i = 0; i < devices.length; i++) {
+            if (Objects.equals(devices[i].getDeviceId(), deviceId)) {
+                return i;
+            }
         }
+        return -1;
+    }
+
+    private static int indexOf(UserSession[] devices, UserSession session) {
+        for (int i = 0; i < devices.length; i++) {
+            if (devices[i] == session) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        final LongObjectMap<UserSession[]> users = new LongObjectHashMap<>();
     }
 }
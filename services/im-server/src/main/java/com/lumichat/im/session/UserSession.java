@@ -2,12 +2,20 @@ package com.lumichat.im.session;
 
 import io.netty.channel.Channel;
 import lombok.Builder;
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.time.Instant;
 import java.util.List;
 
-@Data
+/**
+ * One connected device. Equality is identity: sessions are members of
+ * subscription sets while their mutable fields change.
+ */
+@Getter
+@Setter
+@ToString(exclude = "subscribedUserIds")
 @Builder
 public class UserSession {
 
@@ -16,15 +24,5 @@ public class UserSession {
     private String deviceType;
     private Channel channel;
     private Instant connectedAt;
-    private Instant lastActiveAt;
-    private List<Long> subscribedUserIds;  // User IDs to receive online status updates for
-
-    public void updateLastActive() {
-        this.lastActiveAt = Instant.now();
-    }
-
-    public boolean isActive(long timeoutMs) {
-        return lastActiveAt != null &&
-                Instant.now().toEpochMilli() - lastActiveAt.toEpochMilli() < timeoutMs;
-    }
+    private volatile List<Long> subscribedUserIds;  // User IDs to receive online status updates for
 }
@@ -0,0 +1,87 @@
+package com.lumichat.im.handler;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("LivenessTracker Tests")
+class LivenessTrackerTest {
+
+    private LivenessTracker tracker;
+
+    @AfterEach
+    void tearDown() {
+        if (tracker != null) {
+            tracker.stop();
+        }
+    }
+
+    private EmbeddedChannel trackedChannel() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(false, false);
+        tracker.addTo(channel.pipeline());
+        channel.register();
+        return channel;
+    }
+
+    @Test
+    @DisplayName("Should close a connection that stays idle past the timeout")
+    void shouldCloseIdleConnection() throws Exception {
+        // Given
+        tracker = new LivenessTracker(20, 50, 10);
+        EmbeddedChannel channel = trackedChannel();
+        assertThat(tracker.getStats()).containsEntry("trackedChannels", 1);
+
+        // When
+        for (int i = 0; i < 100 && channel.isOpen(); i++) {
+            Thread.sleep(10);
+        }
+
+        // Then
+        assertThat(channel.isOpen()).isFalse();
+        assertThat(tracker.getStats())
+                .containsEntry("idleClosed", 1L)
+                .containsEntry("trackedChannels", 0);
+    }
+
+    @Test
+    @DisplayName("Should keep a connection open while it keeps receiving data")
+    void shouldKeepActiveConnectionOpen() throws Exception {
+        // Given
+        tracker = new LivenessTracker(50, 150, 10);
+        EmbeddedChannel channel = trackedChannel();
+
+        // When - inbound data every 20ms for well over the idle timeout
+        for (int i = 0; i < 20; i++) {
+            channel.writeInbound(Unpooled.wrappedBuffer(new byte[]{1}));
+            channel.releaseInbound();
+            Thread.sleep(20);
+        }
+
+        // Then
+        assertThat(channel.isOpen()).isTrue();
+        assertThat(tracker.getStats()).containsEntry("idleClosed", 0L);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    @DisplayName("Should default the idle timeout to three heartbeat intervals")
+    void shouldDeriveIdleTimeoutFromHeartbeat() {
+        // When
+        tracker = new LivenessTracker(10000, 0, 10);
+
+        // Then
+        assertThat(tracker.getStats()).containsEntry("idleTimeoutMs", 30000L);
+    }
+
+    @Test
+    @DisplayName("Should reject an idle timeout no longer than the heartbeat interval")
+    void shouldRejectIdleTimeoutWithinHeartbeat() {
+        assertThatThrownBy(() -> new LivenessTracker(30000, 30000, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,159 @@
+package com.lumichat.im.handler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumichat.im.protocol.Packet;
+import com.lumichat.im.protocol.PacketCodec;
+import com.lumichat.im.protocol.ProtocolType;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("OutboundBackpressure Tests")
+class OutboundBackpressureTest {
+
+    private final PacketCodec packetCodec = new PacketCodec(new ObjectMapper());
+
+    private OutboundBackpressure backpressure(OutboundBackpressure.LowPriorityPolicy policy, long maxPendingBytes) {
+        return new OutboundBackpressure(packetCodec, true, policy, maxPendingBytes, 30000);
+    }
+
+    /**
+     * Channel with tiny water marks and an unflushed write, so it reports unwritable.
+     */
+    private EmbeddedChannel stalledChannel(OutboundBackpressure backpressure) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.config().setOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(8, 16));
+        backpressure.addTo(channel.pipeline());
+        channel.write(Unpooled.wrappedBuffer(new byte[64]));
+        channel.runPendingTasks();
+        assertThat(channel.isWritable()).isFalse();
+        return channel;
+    }
+
+    private static Packet typing(long userId, long conversationId) {
+        return Packet.of(ProtocolType.TYPING_NOTIFY, Map.of("userId", userId, "conversationId", conversationId));
+    }
+
+    @Test
+    @DisplayName("Should admit every packet while the channel is writable")
+    void shouldAdmitWhenWritable() {
+        OutboundBackpressure backpressure = backpressure(OutboundBackpressure.LowPriorityPolicy.coalesce, 1024);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        backpressure.addTo(channel.pipeline());
+
+        assertThat(backpressure.admit(channel, typing(1L, 100L))).isTrue();
+        assertThat(backpressure.getStats()).containsEntry("lowPriorityCoalesced", 0L);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    @DisplayName("Should coalesce typing frames while unwritable and send the latest once drained")
+    void shouldCoalesceLowPriorityFrames() {
+        // Given
+        OutboundBackpressure backpressure = backpressure(OutboundBackpressure.LowPriorityPolicy.coalesce, 1024);
+        EmbeddedChannel channel = stalledChannel(backpressure);
+
+        // When
+        assertThat(backpressure.admit(channel, typing(1L, 100L))).isFalse();
+        assertThat(backpressure.admit(channel, typing(1L, 100L))).isFalse();
+        channel.flush();
+        channel.runPendingTasks();
+
+        // Then
+        ReferenceCountUtil.release(channel.readOutbound());
+        Object coalesced = channel.readOutbound();
+        assertThat(coalesced).isInstanceOf(TextWebSocketFrame.class);
+        assertThat(((TextWebSocketFrame) coalesced).text()).contains("\"type\":" + ProtocolType.TYPING_NOTIFY);
+        ReferenceCountUtil.release(coalesced);
+        assertThat(channel.<Object>readOutbound()).isNull();
+        assertThat(backpressure.getStats())
+                .containsEntry("lowPriorityCoalesced", 2L)
+                .containsEntry("coalescedFlushed", 1L);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    @DisplayName("Should merge the states of typing batches for different users while unwritable")
+    void shouldMergeTypingBatches() throws Exception {
+        // Given
+        OutboundBackpressure backpressure = backpressure(OutboundBackpressure.LowPriorityPolicy.coalesce, 1024);
+        EmbeddedChannel channel = stalledChannel(backpressure);
+
+        // When - user 2 stops typing in one batch, user 3 starts in the next
+        assertThat(backpressure.admit(channel, Packet.of(ProtocolType.TYPING_NOTIFY, Map.of("states", List.of(
+                Map.of("conversationId", 100L, "userId", 2L, "typing", false)))))).isFalse();
+        assertThat(backpressure.admit(channel, Packet.of(ProtocolType.TYPING_NOTIFY, Map.of("states", List.of(
+                Map.of("conversationId", 100L, "userId", 3L, "typing", true)))))).isFalse();
+        channel.flush();
+        channel.runPendingTasks();
+
+        // Then - one frame carrying both users' states
+        ReferenceCountUtil.release(channel.readOutbound());
+        TextWebSocketFrame frame = channel.readOutbound();
+        JsonNode states = new ObjectMapper().readTree(frame.text()).path("data").path("states");
+        frame.release();
+        assertThat(states).hasSize(2);
+        assertThat(states.get(0).path("userId").asLong()).isEqualTo(2L);
+        assertThat(states.get(0).path("typing").asBoolean()).isFalse();
+        assertThat(states.get(1).path("userId").asLong()).isEqualTo(3L);
+        assertThat(channel.<Object>readOutbound()).isNull();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    @DisplayName("Should drop low-priority frames under the drop policy")
+    void shouldDropLowPriorityFrames() {
+        OutboundBackpressure backpressure = backpressure(OutboundBackpressure.LowPriorityPolicy.drop, 1024);
+        EmbeddedChannel channel = stalledChannel(backpressure);
+
+        Packet presence = Packet.of(ProtocolType.ONLINE_STATUS_CHANGE, Map.of("userId", 2L, "isOnline", true));
+        assertThat(backpressure.admit(channel, presence)).isFalse();
+
+        assertThat(backpressure.getStats()).containsEntry("lowPriorityDropped", 1L);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    @DisplayName("Should keep queueing messages below the pending limit")
+    void shouldQueueMessagesBelowLimit() {
+        OutboundBackpressure backpressure = backpressure(OutboundBackpressure.LowPriorityPolicy.coalesce, 1024);
+        EmbeddedChannel channel = stalledChannel(backpressure);
+
+        Packet message = Packet.of(ProtocolType.RECEIVE_MESSAGE, Map.of("msgId", "1"));
+        assertThat(backpressure.admit(channel, message)).isTrue();
+
+        assertThat(backpressure.getStats()).containsEntry("queuedWhileUnwritable", 1L);
+        assertThat(channel.isOpen()).isTrue();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    @DisplayName("Should disconnect a consumer whose outbound buffer exceeds the limit")
+    void shouldDisconnectSlowConsumer() {
+        // Given
+        OutboundBackpressure backpressure = backpressure(OutboundBackpressure.LowPriorityPolicy.coalesce, 32);
+        EmbeddedChannel channel = stalledChannel(backpressure);
+
+        // When
+        Packet message = Packet.of(ProtocolType.RECEIVE_MESSAGE, Map.of("msgId", "1"));
+        boolean admitted = backpressure.admit(channel, message);
+
+        // Then
+        assertThat(admitted).isFalse();
+        assertThat(channel.isOpen()).isFalse();
+        assertThat(backpressure.admit(channel, message)).isFalse();
+        assertThat(backpressure.getStats()).containsEntry("slowConsumerDisconnects", 1L);
+        channel.finishAndReleaseAll();
+    }
+}
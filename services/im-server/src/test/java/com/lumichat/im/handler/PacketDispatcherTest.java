@@ -0,0 +1,108 @@
+package com.lumichat.im.handler;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("PacketDispatcher Tests")
+class PacketDispatcherTest {
+
+    private PacketDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should run tasks for one channel in submission order")
+    void shouldPreservePerChannelOrder() throws InterruptedException {
+        // Given
+        dispatcher = new PacketDispatcher(true);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(100);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            dispatcher.dispatch(channel, () -> {
+                executed.add(n);
+                done.countDown();
+            });
+        }
+
+        // Then
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executed).isSorted().hasSize(100);
+    }
+
+    @Test
+    @DisplayName("Should not block other channels while one channel's task is blocked")
+    void shouldIsolateSlowChannel() throws InterruptedException {
+        // Given
+        dispatcher = new PacketDispatcher(true);
+        EmbeddedChannel slowChannel = new EmbeddedChannel();
+        EmbeddedChannel fastChannel = new EmbeddedChannel();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+
+        // When
+        dispatcher.dispatch(slowChannel, () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatcher.dispatch(fastChannel, fastDone::countDown);
+
+        // Then
+        assertThat(fastDone.await(2, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("Should keep draining after a task throws")
+    void shouldContinueAfterFailure() throws InterruptedException {
+        // Given
+        dispatcher = new PacketDispatcher(true);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        CountDownLatch done = new CountDownLatch(1);
+
+        // When
+        dispatcher.dispatch(channel, () -> {
+            throw new IllegalStateException("boom");
+        });
+        dispatcher.dispatch(channel, done::countDown);
+
+        // Then
+        assertThat(done.await(2, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should run inline when virtual threads are disabled")
+    void shouldRunInlineWhenDisabled() {
+        // Given
+        dispatcher = new PacketDispatcher(false);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Thread caller = Thread.currentThread();
+        List<Thread> ranOn = new CopyOnWriteArrayList<>();
+
+        // When
+        dispatcher.dispatch(channel, () -> ranOn.add(Thread.currentThread()));
+
+        // Then
+        assertThat(ranOn).containsExactly(caller);
+    }
+}
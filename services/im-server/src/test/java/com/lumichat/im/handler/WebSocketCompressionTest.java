@@ -0,0 +1,94 @@
+package com.lumichat.im.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("WebSocketCompression Tests")
+class WebSocketCompressionTest {
+
+    private static final String HANDSHAKE = """
+            GET /ws HTTP/1.1\r
+            Host: localhost\r
+            Upgrade: websocket\r
+            Connection: Upgrade\r
+            Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r
+            Sec-WebSocket-Version: 13\r
+            Sec-WebSocket-Extensions: permessage-deflate\r
+            \r
+            """;
+
+    private EmbeddedChannel handshake(WebSocketCompression compression) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(new HttpServerCodec());
+        channel.pipeline().addLast(new HttpObjectAggregator(65536));
+        compression.addTo(channel.pipeline());
+        channel.pipeline().addLast(new WebSocketServerProtocolHandler("/ws", null, true));
+
+        channel.writeInbound(Unpooled.copiedBuffer(HANDSHAKE, StandardCharsets.US_ASCII));
+        ByteBuf response = channel.readOutbound();
+        assertThat(response.toString(StandardCharsets.US_ASCII)).contains("permessage-deflate");
+        response.release();
+        return channel;
+    }
+
+    @Test
+    @DisplayName("Should compress large frames and count bytes saved")
+    void shouldCompressLargeFrames() {
+        // Given
+        WebSocketCompression compression = new WebSocketCompression(true, 6, 1024);
+        EmbeddedChannel channel = handshake(compression);
+
+        // When
+        channel.writeOutbound(new TextWebSocketFrame("{\"content\":\"hello\"},".repeat(200)));
+        ReferenceCountUtil.release(channel.readOutbound());
+
+        // Then
+        assertThat(compression.getStats())
+                .containsEntry("framesCompressed", 1L)
+                .containsEntry("framesSkipped", 0L);
+        assertThat((long) compression.getStats().get("bytesSaved")).isPositive();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    @DisplayName("Should send frames below the threshold uncompressed")
+    void shouldSkipSmallFrames() {
+        // Given
+        WebSocketCompression compression = new WebSocketCompression(true, 6, 1024);
+        EmbeddedChannel channel = handshake(compression);
+
+        // When
+        channel.writeOutbound(new TextWebSocketFrame("{\"type\":103}"));
+        ReferenceCountUtil.release(channel.readOutbound());
+
+        // Then
+        assertThat(compression.getStats())
+                .containsEntry("framesCompressed", 0L)
+                .containsEntry("framesSkipped", 1L);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    @DisplayName("Should leave the pipeline untouched when disabled")
+    void shouldNotInstallWhenDisabled() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        int before = channel.pipeline().names().size();
+
+        new WebSocketCompression(false, 6, 1024).addTo(channel.pipeline());
+
+        assertThat(channel.pipeline().names()).hasSize(before);
+        channel.finishAndReleaseAll();
+    }
+}
@@ -10,8 +10,8 @@ import com.lumichat.im.session.SessionManager;
 import com.lumichat.im.session.UserSession;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelId;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.DefaultAttributeMap;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -55,17 +55,11 @@ class MultiDeviceTest {
     @Mock
     private Channel user1Device2Channel;
     @Mock
-    private ChannelId user1Device1ChannelId;
-    @Mock
-    private ChannelId user1Device2ChannelId;
-    @Mock
     private ChannelFuture channelFuture;
 
     // User 2 device
     @Mock
     private Channel user2DeviceChannel;
-    @Mock
-    private ChannelId user2DeviceChannelId;
 
     @Mock
     private MessageProcessor messageProcessor;
@@ -76,21 +70,15 @@ class MultiDeviceTest {
         objectMapper = new ObjectMapper();
 
         // Setup channel mocks for user 1 device 1
-        lenient().when(user1Device1Channel.id()).thenReturn(user1Device1ChannelId);
-        lenient().when(user1Device1ChannelId.asLongText()).thenReturn("user1-device1-channel");
-        lenient().when(user1Device1ChannelId.asShortText()).thenReturn("u1d1");
+        stubAttributes(user1Device1Channel);
         lenient().when(user1Device1Channel.writeAndFlush(any())).thenReturn(channelFuture);
 
         // Setup channel mocks for user 1 device 2
-        lenient().when(user1Device2Channel.id()).thenReturn(user1Device2ChannelId);
-        lenient().when(user1Device2ChannelId.asLongText()).thenReturn("user1-device2-channel");
-        lenient().when(user1Device2ChannelId.asShortText()).thenReturn("u1d2");
+        stubAttributes(user1Device2Channel);
         lenient().when(user1Device2Channel.writeAndFlush(any())).thenReturn(channelFuture);
 
         // Setup channel mocks for user 2
-        lenient().when(user2DeviceChannel.id()).thenReturn(user2DeviceChannelId);
-        lenient().when(user2DeviceChannelId.asLongText()).thenReturn("user2-device1-channel");
-        lenient().when(user2DeviceChannelId.asShortText()).thenReturn("u2d1");
+        stubAttributes(user2DeviceChannel);
         lenient().when(user2DeviceChannel.writeAndFlush(any())).thenReturn(channelFuture);
 
         // Setup API client mock
@@ -98,6 +86,11 @@ class MultiDeviceTest {
                 .thenReturn(List.of(1L, 2L));
     }
 
+    private static void stubAttributes(Channel channel) {
+        DefaultAttributeMap attributes = new DefaultAttributeMap();
+        lenient().when(channel.attr(SessionManager.SESSION)).thenReturn(attributes.attr(SessionManager.SESSION));
+    }
+
     @Nested
     @DisplayName("Message Delivery to Multiple Devices")
     class MessageDeliveryTests {
@@ -410,10 +403,7 @@ class MultiDeviceTest {
             for (int i = 0; i < threadCount; i++) {
                 final int deviceNum = i;
                 final Channel mockChannel = mock(Channel.class);
-                final ChannelId mockChannelId = mock(ChannelId.class);
-                when(mockChannel.id()).thenReturn(mockChannelId);
-                when(mockChannelId.asLongText()).thenReturn("channel-" + deviceNum);
-                when(mockChannelId.asShortText()).thenReturn("ch" + deviceNum);
+                stubAttributes(mockChannel);
 
                 threads[i] = new Thread(() -> {
                     sessionManager.addSession(mockChannel, 1L, "device-" + deviceNum, "web");
@@ -438,9 +428,7 @@ class MultiDeviceTest {
             // Given: Pre-register some sessions
             for (int i = 0; i < 3; i++) {
                 final Channel mockChannel = mock(Channel.class);
-                final ChannelId mockChannelId = mock(ChannelId.class);
-                when(mockChannel.id()).thenReturn(mockChannelId);
-                when(mockChannelId.asLongText()).thenReturn("channel-" + i);
+                stubAttributes(mockChannel);
                 sessionManager.addSession(mockChannel, 1L, "device-" + i, "web");
             }
 
@@ -448,10 +436,7 @@ class MultiDeviceTest {
             Thread addThread = new Thread(() -> {
                 for (int i = 10; i < 15; i++) {
                     final Channel mockChannel = mock(Channel.class);
-                    final ChannelId mockChannelId = mock(ChannelId.class);
-                    when(mockChannel.id()).thenReturn(mockChannelId);
-                    when(mockChannelId.asLongText()).thenReturn("channel-" + i);
-                    when(mockChannelId.asShortText()).thenReturn("ch" + i);
+                    stubAttributes(mockChannel);
                     sessionManager.addSession(mockChannel, 2L, "device-" + i, "mobile");
                 }
             });
@@ -0,0 +1,121 @@
+package com.lumichat.im.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("PacketCodec Tests")
+class PacketCodecTest {
+
+    private ObjectMapper objectMapper;
+    private PacketCodec packetCodec;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper();
+        packetCodec = new PacketCodec(objectMapper);
+    }
+
+    @Test
+    @DisplayName("Should decode JSON login straight into LoginData")
+    void shouldDecodeJsonLoginIntoTypedData() throws Exception {
+        // Given
+        String json = "{\"type\":1,\"seq\":\"seq-1\",\"data\":{\"token\":\"t\",\"deviceId\":\"d1\",\"deviceType\":\"web\"}}";
+
+        // When
+        Packet packet = packetCodec.decode(new TextWebSocketFrame(json));
+
+        // Then
+        assertThat(packet.getType()).isEqualTo(ProtocolType.LOGIN);
+        assertThat(packet.getSeq()).isEqualTo("seq-1");
+        assertThat(packet.getData()).isInstanceOf(LoginData.class);
+        assertThat(((LoginData) packet.getData()).getDeviceId()).isEqualTo("d1");
+    }
+
+    @Test
+    @DisplayName("Should decode CBOR chat message straight into ChatMessageData")
+    void shouldDecodeCborChatMessageIntoTypedData() throws Exception {
+        // Given
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+        byte[] body = cbor.writeValueAsBytes(Map.of(
+                "type", ProtocolType.CHAT_MESSAGE,
+                "seq", "seq-2",
+                "data", Map.of("msgId", "client-1", "conversationId", 100, "msgType", "text",
+                        "content", "Hello", "atUserIds", List.of(2, 3))));
+
+        // When
+        Packet packet = packetCodec.decode(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(body)));
+
+        // Then
+        assertThat(packet.getData()).isInstanceOf(ChatMessageData.class);
+        ChatMessageData data = (ChatMessageData) packet.getData();
+        assertThat(data.getConversationId()).isEqualTo(100L);
+        assertThat(data.getContent()).isEqualTo("Hello");
+        assertThat(data.getAtUserIds()).containsExactly(2L, 3L);
+    }
+
+    @Test
+    @DisplayName("Should keep untyped payloads as maps")
+    void shouldKeepOtherPayloadsAsMaps() throws Exception {
+        // When
+        Packet packet = packetCodec.decode(new TextWebSocketFrame("{\"type\":11,\"data\":{\"conversationId\":5}}"));
+
+        // Then
+        assertThat(packet.getData()).isInstanceOf(Map.class);
+        assertThat(((Map<?, ?>) packet.getData()).get("conversationId")).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("Should default to JSON unless the channel negotiated CBOR")
+    void shouldResolveWireFormatFromChannel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        assertThat(packetCodec.formatOf(channel)).isEqualTo(WireFormat.JSON);
+
+        channel.attr(PacketCodec.WIRE_FORMAT).set(WireFormat.fromSubprotocol("lumi.cbor"));
+        assertThat(packetCodec.formatOf(channel)).isEqualTo(WireFormat.CBOR);
+    }
+
+    @Test
+    @DisplayName("Should encode a shared frame once per wire format")
+    void shouldEncodeSharedFramePerFormat() throws Exception {
+        // Given
+        Packet packet = Packet.of(ProtocolType.RECALL_NOTIFY, Map.of("msgId", "m1"));
+
+        WebSocketFrame text1;
+        WebSocketFrame text2;
+        WebSocketFrame binary;
+        try (PacketCodec.SharedFrame frame = packetCodec.share(packet)) {
+            // When
+            text1 = frame.frameFor(WireFormat.JSON);
+            text2 = frame.frameFor(WireFormat.JSON);
+            binary = frame.frameFor(WireFormat.CBOR);
+        }
+
+        // Then
+        assertThat(text1).isInstanceOf(TextWebSocketFrame.class);
+        assertThat(binary).isInstanceOf(BinaryWebSocketFrame.class);
+        assertThat(text1.content().refCnt()).isEqualTo(2);
+        assertThat(binary.content().refCnt()).isEqualTo(1);
+
+        Packet roundTrip = packetCodec.decode(binary);
+        assertThat(roundTrip.getType()).isEqualTo(ProtocolType.RECALL_NOTIFY);
+        assertThat(((TextWebSocketFrame) text2).text()).contains("\"msgId\":\"m1\"");
+
+        text1.release();
+        text2.release();
+        binary.release();
+        assertThat(text1.content().refCnt()).isZero();
+    }
+}
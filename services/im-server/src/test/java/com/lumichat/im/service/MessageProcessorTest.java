@@ -2,9 +2,13 @@ package com.lumichat.im.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lumichat.im.client.ApiClient;
+import com.lumichat.im.handler.OutboundBackpressure;
 import com.lumichat.im.protocol.Packet;
+import com.lumichat.im.protocol.PacketCodec;
 import com.lumichat.im.protocol.ProtocolType;
 import com.lumichat.im.security.JwtTokenValidator;
+import com.lumichat.im.session.ClusterSessionDirectory;
+import com.lumichat.im.session.PresenceSubscriptions;
 import com.lumichat.im.session.SessionManager;
 import com.lumichat.im.session.UserSession;
 import io.netty.channel.Channel;
@@ -47,6 +51,9 @@ class MessageProcessorTest {
     @Mock
     private ApiClient apiClient;
 
+    @Mock
+    private ClusterSessionDirectory sessionDirectory;
+
     @Mock
     private ChannelHandlerContext ctx;
 
@@ -62,14 +69,25 @@ class MessageProcessorTest {
     @Mock
     private SetOperations<String, String> setOperations;
 
+    @Mock
+    private PresenceService presenceService;
+
     private ObjectMapper objectMapper;
+    private PresenceSubscriptions presenceSubscriptions;
     private MessageProcessor messageProcessor;
 
     @BeforeEach
     void setUp() {
         objectMapper = new ObjectMapper();
+        PacketCodec packetCodec = new PacketCodec(objectMapper);
+        OutboundBackpressure outboundBackpressure =
+                new OutboundBackpressure(packetCodec, true, OutboundBackpressure.LowPriorityPolicy.coalesce, 4194304, 30000);
+        presenceSubscriptions = new PresenceSubscriptions();
         messageProcessor = new MessageProcessor(
-                sessionManager, objectMapper, redisTemplate, jwtTokenValidator, apiClient);
+                sessionManager, objectMapper, redisTemplate, jwtTokenValidator, apiClient, sessionDirectory,
+                new RealtimeEventPublisher(redisTemplate, "pubsub", 100000), packetCodec, outboundBackpressure,
+                presenceSubscriptions, presenceService,
+                new TypingCoalescer(sessionManager, packetCodec, outboundBackpressure, 2000, 200));
 
         // Common channel mock setup
         lenient().when(ctx.channel()).thenReturn(channel);
@@ -100,15 +118,13 @@ class MessageProcessorTest {
 
             when(jwtTokenValidator.validateToken(validToken))
                     .thenReturn(new JwtTokenValidator.TokenInfo(userId, deviceId));
-            when(sessionManager.getSessionsByUserId(userId))
-                    .thenReturn(Collections.emptyList());
 
             // When
             messageProcessor.handleLogin(ctx, loginPacket);
 
             // Then
             verify(sessionManager).addSession(channel, userId, deviceId, "web");
-            verify(setOperations).add("online:users", userId.toString());
+            verify(sessionDirectory).register(userId, deviceId);
 
             ArgumentCaptor<TextWebSocketFrame> frameCaptor = ArgumentCaptor.forClass(TextWebSocketFrame.class);
             verify(ctx).writeAndFlush(frameCaptor.capture());
@@ -193,18 +209,16 @@ class MessageProcessorTest {
 
             when(jwtTokenValidator.validateToken(validToken))
                     .thenReturn(new JwtTokenValidator.TokenInfo(userId, deviceId));
-            when(sessionManager.getSessionsByUserId(userId))
-                    .thenReturn(Collections.emptyList()); // No existing sessions = first device
-            when(sessionManager.getAllSessions())
-                    .thenReturn(Collections.emptyList());
+            when(sessionDirectory.register(userId, deviceId))
+                    .thenReturn(true); // No other device online in the cluster = first device
 
             // When
             messageProcessor.handleLogin(ctx, loginPacket);
 
             // Then
             verify(sessionManager).addSession(channel, userId, deviceId, "web");
-            // Online status broadcast called because it's first device
-            verify(sessionManager).getAllSessions();
+            // Online status published cluster-wide because it's first device
+            verify(redisTemplate).convertAndSend(eq("im:presence"), contains("\"isOnline\":true"));
         }
 
         @Test
@@ -215,8 +229,6 @@ class MessageProcessorTest {
             String deviceId = "device-123";
             Long userId = 1L;
 
-            UserSession existingSession = mock(UserSession.class);
-
             Packet loginPacket = Packet.builder()
                     .type(ProtocolType.LOGIN)
                     .seq("seq-1")
@@ -225,16 +237,16 @@ class MessageProcessorTest {
 
             when(jwtTokenValidator.validateToken(validToken))
                     .thenReturn(new JwtTokenValidator.TokenInfo(userId, deviceId));
-            when(sessionManager.getSessionsByUserId(userId))
-                    .thenReturn(List.of(existingSession)); // Has existing session = not first device
+            when(sessionDirectory.register(userId, deviceId))
+                    .thenReturn(false); // Another device already online = not first device
 
             // When
             messageProcessor.handleLogin(ctx, loginPacket);
 
             // Then
             verify(sessionManager).addSession(channel, userId, deviceId, "web");
-            // getAllSessions should not be called for status broadcast
-            verify(sessionManager, never()).getAllSessions();
+            // No online status change for an additional device
+            verify(redisTemplate, never()).convertAndSend(eq("im:presence"), anyString());
         }
     }
 
@@ -288,8 +300,8 @@ class MessageProcessorTest {
             assertThat(responseJson).contains("\"msgId\":\"server-msg-id\"");
             assertThat(responseJson).contains("\"clientMsgId\":\"client-msg-id\"");
 
-            // Verify message published to Redis
-            verify(redisTemplate).convertAndSend(eq("im:messages"), anyString());
+            // Fan-out is published by the API, not a second time by the IM server
+            verify(redisTemplate, never()).convertAndSend(eq("im:messages"), anyString());
         }
 
         @Test
@@ -414,6 +426,43 @@ class MessageProcessorTest {
             assertThat(publishedMessage).contains("\"conversationId\":100");
         }
 
+        @Test
+        @DisplayName("Should publish repeated typing only once per interval, then the stop")
+        void shouldCoalesceRepeatedTyping() {
+            // Given
+            UserSession session = UserSession.builder()
+                    .userId(1L)
+                    .deviceId("device-123")
+                    .channel(channel)
+                    .build();
+
+            when(sessionManager.getSessionByChannel(channel)).thenReturn(session);
+
+            Packet typingPacket = Packet.builder()
+                    .type(ProtocolType.TYPING)
+                    .seq("seq-1")
+                    .data(Map.of("conversationId", 100))
+                    .build();
+            Packet stoppedPacket = Packet.builder()
+                    .type(ProtocolType.TYPING)
+                    .seq("seq-2")
+                    .data(Map.of("conversationId", 100, "typing", false))
+                    .build();
+
+            // When
+            messageProcessor.handleTyping(ctx, typingPacket);
+            messageProcessor.handleTyping(ctx, typingPacket);
+            messageProcessor.handleTyping(ctx, typingPacket);
+            messageProcessor.handleTyping(ctx, stoppedPacket);
+            messageProcessor.handleTyping(ctx, stoppedPacket);
+
+            // Then
+            ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+            verify(redisTemplate, times(2)).convertAndSend(eq("im:typing"), messageCaptor.capture());
+            assertThat(messageCaptor.getAllValues().get(0)).contains("\"typing\":true");
+            assertThat(messageCaptor.getAllValues().get(1)).contains("\"typing\":false");
+        }
+
         @Test
         @DisplayName("Should ignore typing from unauthenticated channel")
         void shouldIgnoreTypingFromUnauthenticatedChannel() {
@@ -663,8 +712,6 @@ class MessageProcessorTest {
                     .build();
 
             when(sessionManager.getSessionByChannel(channel)).thenReturn(session);
-            when(sessionManager.getSessionsByUserId(1L)).thenReturn(Collections.emptyList());
-            when(sessionManager.getAllSessions()).thenReturn(Collections.emptyList());
 
             Packet logoutPacket = Packet.builder()
                     .type(ProtocolType.LOGOUT)
@@ -675,7 +722,7 @@ class MessageProcessorTest {
             messageProcessor.handleLogout(ctx, logoutPacket);
 
             // Then
-            verify(setOperations).remove("online:users", "1");
+            verify(sessionDirectory).unregister(1L, "device-123");
             verify(ctx).close();
 
             ArgumentCaptor<TextWebSocketFrame> frameCaptor = ArgumentCaptor.forClass(TextWebSocketFrame.class);
@@ -737,8 +784,8 @@ class MessageProcessorTest {
     class DisconnectHandlerTests {
 
         @Test
-        @DisplayName("Should remove user from online set when last device disconnects")
-        void shouldRemoveFromOnlineSetWhenLastDeviceDisconnects() {
+        @DisplayName("Should broadcast offline status when the last device in the cluster disconnects")
+        void shouldBroadcastOfflineWhenLastDeviceDisconnects() {
             // Given
             UserSession session = UserSession.builder()
                     .userId(1L)
@@ -746,20 +793,19 @@ class MessageProcessorTest {
                     .channel(channel)
                     .build();
 
-            when(sessionManager.getSessionsByUserId(1L))
-                    .thenReturn(List.of(session)); // Only this session
-            when(sessionManager.getAllSessions()).thenReturn(Collections.emptyList());
+            when(sessionDirectory.unregister(1L, "device-123"))
+                    .thenReturn(true); // Last device in the cluster
 
             // When
             messageProcessor.handleDisconnect(session);
 
             // Then
-            verify(setOperations).remove("online:users", "1");
+            verify(redisTemplate).convertAndSend(eq("im:presence"), contains("\"isOnline\":false"));
         }
 
         @Test
-        @DisplayName("Should not remove from online set when other devices are connected")
-        void shouldNotRemoveFromOnlineSetWhenOtherDevicesConnected() {
+        @DisplayName("Should not broadcast offline status when other devices are connected")
+        void shouldNotBroadcastOfflineWhenOtherDevicesConnected() {
             // Given
             UserSession session = UserSession.builder()
                     .userId(1L)
@@ -767,16 +813,37 @@ class MessageProcessorTest {
                     .channel(channel)
                     .build();
 
-            UserSession otherSession = mock(UserSession.class);
-
-            when(sessionManager.getSessionsByUserId(1L))
-                    .thenReturn(List.of(session, otherSession)); // Two sessions
+            when(sessionDirectory.unregister(1L, "device-123"))
+                    .thenReturn(false); // Another device still online
 
             // When
             messageProcessor.handleDisconnect(session);
 
             // Then
-            verify(setOperations, never()).remove(anyString(), anyString());
+            verify(redisTemplate, never()).convertAndSend(eq("im:presence"), anyString());
+        }
+
+        @Test
+        @DisplayName("Should keep the route when the device already reconnected to this node")
+        void shouldKeepRouteWhenDeviceReconnected() {
+            // Given
+            UserSession stale = UserSession.builder()
+                    .userId(1L)
+                    .deviceId("device-123")
+                    .channel(channel)
+                    .build();
+            UserSession live = UserSession.builder()
+                    .userId(1L)
+                    .deviceId("device-123")
+                    .build();
+            when(sessionManager.getSession(1L, "device-123")).thenReturn(live);
+
+            // When
+            messageProcessor.handleDisconnect(stale);
+
+            // Then
+            verify(sessionDirectory, never()).unregister(anyLong(), anyString());
+            verify(redisTemplate, never()).convertAndSend(eq("im:presence"), anyString());
         }
     }
 
@@ -795,8 +862,8 @@ class MessageProcessorTest {
                     .build();
 
             when(sessionManager.getSessionByChannel(channel)).thenReturn(session);
-            when(setOperations.isMember("online:users", "2")).thenReturn(true);
-            when(setOperations.isMember("online:users", "3")).thenReturn(false);
+            when(presenceService.getOnlineStatuses(List.of(2L, 3L)))
+                    .thenReturn(Map.of(2L, true, 3L, false));
 
             Packet statusPacket = Packet.builder()
                     .type(ProtocolType.ONLINE_STATUS_REQUEST)
@@ -814,6 +881,7 @@ class MessageProcessorTest {
             String responseJson = frameCaptor.getValue().text();
             assertThat(responseJson).contains("\"success\":true");
             assertThat(responseJson).contains("statuses");
+            assertThat(responseJson).contains("\"2\":true").contains("\"3\":false");
         }
 
         @Test
@@ -844,5 +912,94 @@ class MessageProcessorTest {
             String responseJson = frameCaptor.getValue().text();
             assertThat(responseJson).contains("\"success\":true");
         }
+
+        @Test
+        @DisplayName("Should notify only sessions subscribed to the user")
+        void shouldNotifyOnlySubscribedSessions() {
+            // Given
+            Channel watcherChannel = mock(Channel.class);
+            Channel otherChannel = mock(Channel.class);
+            when(watcherChannel.writeAndFlush(any())).thenReturn(channelFuture);
+            UserSession watcher = UserSession.builder().userId(2L).deviceId("device-2").channel(watcherChannel).build();
+            UserSession other = UserSession.builder().userId(3L).deviceId("device-3").channel(otherChannel).build();
+
+            when(sessionManager.getSessionByChannel(channel)).thenReturn(watcher);
+            messageProcessor.handleOnlineStatusSubscribe(ctx, Packet.builder()
+                    .type(ProtocolType.ONLINE_STATUS_SUBSCRIBE)
+                    .data(Map.of("userIds", List.of(1, 5)))
+                    .build());
+            presenceSubscriptions.subscribe(other, List.of(5L));
+
+            // When
+            messageProcessor.deliverOnlineStatusChange(1L, true);
+
+            // Then
+            ArgumentCaptor<TextWebSocketFrame> frameCaptor = ArgumentCaptor.forClass(TextWebSocketFrame.class);
+            verify(watcherChannel).writeAndFlush(frameCaptor.capture());
+            assertThat(frameCaptor.getValue().text()).contains("\"userId\":1");
+            frameCaptor.getValue().release();
+            verify(otherChannel, never()).writeAndFlush(any());
+        }
+
+        @Test
+        @DisplayName("Should drop a session's subscriptions when it disconnects")
+        void shouldDropSubscriptionsOnDisconnect() {
+            // Given
+            UserSession watcher = UserSession.builder().userId(2L).deviceId("device-2").channel(channel).build();
+            presenceSubscriptions.subscribe(watcher, List.of(1L));
+
+            // When
+            messageProcessor.handleDisconnect(watcher);
+            messageProcessor.deliverOnlineStatusChange(1L, false);
+
+            // Then
+            assertThat(presenceSubscriptions.getSubscribers(1L)).isEmpty();
+            verify(channel, never()).writeAndFlush(any());
+        }
+    }
+
+    @Nested
+    @DisplayName("Shared Frame Fan-out Tests")
+    class SharedFrameFanoutTests {
+
+        @Test
+        @DisplayName("Should serialize once and share the buffer across recipients")
+        void shouldSerializeOnceAndShareBuffer() {
+            // Given
+            UserSession session1 = UserSession.builder().userId(1L).deviceId("device-1").channel(channel).build();
+            UserSession session2 = UserSession.builder().userId(2L).deviceId("device-2").channel(channel).build();
+            when(sessionManager.getSessionsByUserId(1L)).thenReturn(List.of(session1));
+            when(sessionManager.getSessionsByUserId(2L)).thenReturn(List.of(session2));
+
+            Packet packet = Packet.of(ProtocolType.RECALL_NOTIFY, Map.of("msgId", "msg-1"));
+
+            // When
+            messageProcessor.sendToUsers(List.of(1L, 2L), packet);
+
+            // Then
+            ArgumentCaptor<TextWebSocketFrame> frameCaptor = ArgumentCaptor.forClass(TextWebSocketFrame.class);
+            verify(channel, times(2)).writeAndFlush(frameCaptor.capture());
+
+            List<TextWebSocketFrame> frames = frameCaptor.getAllValues();
+            assertThat(frames.get(0).text()).isEqualTo(frames.get(1).text()).contains("\"msgId\":\"msg-1\"");
+
+            // One retained view per frame; the shared frame's own reference is already released
+            assertThat(frames.get(0).content().refCnt()).isEqualTo(2);
+            frames.forEach(TextWebSocketFrame::release);
+            assertThat(frames.get(0).content().refCnt()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should not encode when no recipient is online")
+        void shouldNotEncodeWhenNobodyOnline() {
+            // Given
+            when(sessionManager.getSessionsByUserId(1L)).thenReturn(Collections.emptyList());
+
+            // When
+            messageProcessor.sendToUsers(List.of(1L), Packet.of(ProtocolType.RECALL_NOTIFY, Map.of()));
+
+            // Then
+            verify(channel, never()).writeAndFlush(any());
+        }
     }
 }
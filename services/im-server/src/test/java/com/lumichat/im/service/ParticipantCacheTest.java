@@ -0,0 +1,83 @@
+package com.lumichat.im.service;
+
+import com.lumichat.im.client.ApiClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ParticipantCache Tests")
+class ParticipantCacheTest {
+
+    @Mock
+    private ApiClient apiClient;
+
+    private ParticipantCache participantCache;
+
+    @BeforeEach
+    void setUp() {
+        participantCache = new ParticipantCache(apiClient, 100, 60000);
+    }
+
+    @Test
+    @DisplayName("Should load participants once and serve repeats from cache")
+    void shouldServeRepeatsFromCache() {
+        // Given
+        when(apiClient.getConversationParticipants(100L)).thenReturn(List.of(1L, 2L));
+
+        // When
+        List<Long> first = participantCache.getParticipants(100L);
+        List<Long> second = participantCache.getParticipants(100L);
+
+        // Then
+        assertThat(first).containsExactly(1L, 2L);
+        assertThat(second).containsExactly(1L, 2L);
+        verify(apiClient, times(1)).getConversationParticipants(100L);
+        assertThat(participantCache.getStats())
+                .containsEntry("hits", 1L)
+                .containsEntry("misses", 1L);
+    }
+
+    @Test
+    @DisplayName("Should reload participants after invalidation")
+    void shouldReloadAfterInvalidation() {
+        // Given
+        when(apiClient.getConversationParticipants(100L))
+                .thenReturn(List.of(1L, 2L))
+                .thenReturn(List.of(1L, 2L, 3L));
+        participantCache.getParticipants(100L);
+
+        // When
+        participantCache.invalidate(100L);
+        List<Long> reloaded = participantCache.getParticipants(100L);
+
+        // Then
+        assertThat(reloaded).containsExactly(1L, 2L, 3L);
+        verify(apiClient, times(2)).getConversationParticipants(100L);
+        assertThat(participantCache.getStats()).containsEntry("invalidations", 1L);
+    }
+
+    @Test
+    @DisplayName("Should not cache empty participant lists")
+    void shouldNotCacheEmptyResults() {
+        // Given
+        when(apiClient.getConversationParticipants(100L)).thenReturn(List.of());
+
+        // When
+        List<Long> first = participantCache.getParticipants(100L);
+        List<Long> second = participantCache.getParticipants(100L);
+
+        // Then
+        assertThat(first).isEmpty();
+        assertThat(second).isEmpty();
+        verify(apiClient, times(2)).getConversationParticipants(100L);
+    }
+}
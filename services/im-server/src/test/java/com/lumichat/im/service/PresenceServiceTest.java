@@ -0,0 +1,101 @@
+package com.lumichat.im.service;
+
+import com.lumichat.im.session.SessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PresenceService Tests")
+class PresenceServiceTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    @Mock
+    private SessionManager sessionManager;
+
+    private PresenceService presenceService;
+
+    @BeforeEach
+    void setUp() {
+        presenceService = new PresenceService(redisTemplate, sessionManager, 100, 60000);
+        lenient().when(redisTemplate.opsForSet()).thenReturn(setOperations);
+    }
+
+    @Test
+    @DisplayName("Should resolve all misses with a single SMISMEMBER call")
+    void shouldBatchMissesIntoOneCall() {
+        // Given
+        when(setOperations.isMember("online:users", "2", "3", "4"))
+                .thenReturn(Map.of("2", true, "3", false, "4", true));
+
+        // When
+        Map<Long, Boolean> statuses = presenceService.getOnlineStatuses(List.of(2L, 3L, 4L));
+
+        // Then
+        assertThat(statuses).containsExactly(Map.entry(2L, true), Map.entry(3L, false), Map.entry(4L, true));
+        verify(setOperations, times(1)).isMember(anyString(), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("Should answer local and cached users without Redis")
+    void shouldServeLocalAndCachedUsers() {
+        // Given
+        when(sessionManager.isUserOnline(1L)).thenReturn(true);
+        when(setOperations.isMember("online:users", new Object[]{"2"})).thenReturn(Map.of("2", false));
+        presenceService.getOnlineStatuses(List.of(2L));
+
+        // When
+        Map<Long, Boolean> statuses = presenceService.getOnlineStatuses(List.of(1L, 2L));
+
+        // Then
+        assertThat(statuses).containsEntry(1L, true).containsEntry(2L, false);
+        verify(setOperations, times(1)).isMember(anyString(), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("Should apply presence change events to the cache")
+    void shouldApplyStatusChangeEvents() {
+        // Given
+        when(setOperations.isMember("online:users", new Object[]{"2"})).thenReturn(Map.of("2", false));
+        presenceService.getOnlineStatuses(List.of(2L));
+
+        // When
+        presenceService.onStatusChange(2L, true);
+
+        // Then
+        assertThat(presenceService.getOnlineStatuses(List.of(2L))).containsEntry(2L, true);
+        verify(setOperations, times(1)).isMember(anyString(), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("Should read cluster presence without the cache for offline-queue decisions")
+    void shouldBypassCacheForOnlineUsers() {
+        // Given
+        presenceService.onStatusChange(2L, false);
+        when(setOperations.isMember("online:users", "2", "3")).thenReturn(Map.of("2", true, "3", false));
+
+        // When
+        Set<Long> online = presenceService.getOnlineUsers(List.of(2L, 3L));
+
+        // Then
+        assertThat(online).containsExactly(2L);
+    }
+}
@@ -0,0 +1,88 @@
+package com.lumichat.im.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumichat.im.handler.OutboundBackpressure;
+import com.lumichat.im.protocol.PacketCodec;
+import com.lumichat.im.protocol.ProtocolType;
+import com.lumichat.im.session.SessionManager;
+import com.lumichat.im.session.UserSession;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TypingCoalescer Tests")
+class TypingCoalescerTest {
+
+    @Mock
+    private SessionManager sessionManager;
+
+    private TypingCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        PacketCodec packetCodec = new PacketCodec(new ObjectMapper());
+        coalescer = new TypingCoalescer(sessionManager, packetCodec,
+                new OutboundBackpressure(packetCodec, true, OutboundBackpressure.LowPriorityPolicy.coalesce, 4194304, 30000),
+                60000, 200);
+    }
+
+    @Test
+    @DisplayName("Should publish typing once per window and only stop what was started")
+    void shouldGatePublishes() {
+        // A stop without a preceding typing state has nothing to end
+        assertThat(coalescer.shouldPublish(1L, 100L, false)).isFalse();
+
+        assertThat(coalescer.shouldPublish(1L, 100L, true)).isTrue();
+        assertThat(coalescer.shouldPublish(1L, 100L, true)).isFalse();
+        assertThat(coalescer.shouldPublish(1L, 200L, true)).isTrue();
+
+        assertThat(coalescer.shouldPublish(1L, 100L, false)).isTrue();
+        assertThat(coalescer.shouldPublish(1L, 100L, false)).isFalse();
+
+        // Typing again after a stop goes out immediately
+        assertThat(coalescer.shouldPublish(1L, 100L, true)).isTrue();
+        assertThat(coalescer.getStats())
+                .containsEntry("publishes", 4L)
+                .containsEntry("suppressed", 3L);
+    }
+
+    @Test
+    @DisplayName("Should batch typing states into one frame per recipient")
+    void shouldBatchStatesPerRecipient() {
+        // Given
+        EmbeddedChannel channel = new EmbeddedChannel();
+        UserSession recipient = UserSession.builder().userId(3L).deviceId("d3").channel(channel).build();
+        when(sessionManager.isUserOnline(3L)).thenReturn(true);
+        when(sessionManager.getSessionsByUserId(3L)).thenReturn(List.of(recipient));
+
+        // When
+        coalescer.enqueue(100L, 1L, true, List.of(1L, 3L));
+        coalescer.enqueue(200L, 2L, true, List.of(2L, 3L));
+        coalescer.enqueue(100L, 1L, false, List.of(1L, 3L));
+        coalescer.flush();
+
+        // Then
+        TextWebSocketFrame frame = channel.readOutbound();
+        assertThat(frame.text())
+                .contains("\"type\":" + ProtocolType.TYPING_NOTIFY)
+                .contains("\"conversationId\":100", "\"conversationId\":200")
+                .contains("\"typing\":false", "\"typing\":true");
+        frame.release();
+        assertThat(channel.<Object>readOutbound()).isNull();
+        verify(sessionManager, never()).isUserOnline(1L);
+        assertThat(coalescer.getStats())
+                .containsEntry("batchesSent", 1L)
+                .containsEntry("statesSent", 2L);
+    }
+}
@@ -0,0 +1,160 @@
+package com.lumichat.im.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ClusterSessionDirectory Tests")
+class ClusterSessionDirectoryTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    @Mock
+    private SessionManager sessionManager;
+
+    private ClusterSessionDirectory directory;
+
+    @BeforeEach
+    void setUp() {
+        directory = new ClusterSessionDirectory(redisTemplate, sessionManager, new ObjectMapper(),
+                "node-a", 5000, 15000, 10000);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(redisTemplate.opsForSet()).thenReturn(setOperations);
+    }
+
+    @Test
+    @DisplayName("Should only renew the heartbeat while the node is still registered")
+    void shouldRenewHeartbeat() {
+        // Given
+        when(setOperations.add("im:nodes", "node-a")).thenReturn(0L);
+
+        // When
+        directory.heartbeat();
+
+        // Then
+        verify(valueOperations).set(eq("im:heartbeat:node-a"), anyString(), eq(Duration.ofMillis(15000)));
+        verify(sessionManager, never()).getAllSessions();
+        assertThat(directory.getStats()).containsEntry("heartbeats", 1L).containsEntry("reregistrations", 0L);
+    }
+
+    @Test
+    @DisplayName("Should register local sessions again after being reaped")
+    @SuppressWarnings("unchecked")
+    void shouldReregisterAfterBeingReaped() {
+        // Given
+        when(setOperations.add("im:nodes", "node-a")).thenReturn(1L);
+        when(sessionManager.getAllSessions()).thenReturn(List.of(
+                UserSession.builder().userId(1L).deviceId("d1").build()));
+        when(redisTemplate.execute(any(RedisScript.class),
+                eq(List.of("im:route:1", "online:users", "im:node-sessions:node-a")), eq("d1"), eq("node-a"), eq("1")))
+                .thenReturn(1L);
+
+        // When
+        directory.heartbeat();
+
+        // Then
+        verify(redisTemplate).convertAndSend(eq("im:presence"),
+                argThat((String json) -> json.contains("\"userId\":1") && json.contains("\"isOnline\":true")));
+        assertThat(directory.getStats()).containsEntry("reregistrations", 1L);
+    }
+
+    @Test
+    @DisplayName("Should reap nodes whose heartbeat expired and publish their users offline")
+    @SuppressWarnings("unchecked")
+    void shouldReapDeadNode() {
+        // Given
+        when(setOperations.members("im:nodes")).thenReturn(Set.of("node-a", "node-b"));
+        when(redisTemplate.hasKey("im:heartbeat:node-b")).thenReturn(false);
+        Cursor<String> members = cursorOf("7:d1", "8:d2:tablet");
+        when(setOperations.scan(eq("im:node-sessions:node-b"), any(ScanOptions.class))).thenReturn(members);
+        when(redisTemplate.execute(any(RedisScript.class),
+                eq(List.of("im:heartbeat:node-b", "im:node-sessions:node-b", "online:users", "im:route:7", "im:route:8")),
+                eq("node-b"), eq("7"), eq("d1"), eq("8"), eq("d2:tablet")))
+                .thenReturn(List.of("7"));
+        when(redisTemplate.execute(any(RedisScript.class),
+                eq(List.of("im:heartbeat:node-b", "im:node-sessions:node-b", "im:nodes")), eq("node-b")))
+                .thenReturn(1L);
+
+        // When
+        directory.reapDeadNodes();
+
+        // Then - the route keys are passed to the script, not built inside it
+        verify(redisTemplate).convertAndSend(eq("im:presence"),
+                argThat((String json) -> json.contains("\"userId\":7") && json.contains("\"isOnline\":false")));
+        verify(members).close();
+        assertThat(directory.getStats())
+                .containsEntry("nodesReaped", 1L)
+                .containsEntry("usersReaped", 1L);
+    }
+
+    @Test
+    @DisplayName("Should stop reaping a node that renews its heartbeat midway")
+    @SuppressWarnings("unchecked")
+    void shouldStopReapingRenewedNode() {
+        // Given - the chunk script finds the heartbeat back and returns nil
+        when(setOperations.members("im:nodes")).thenReturn(Set.of("node-a", "node-b"));
+        when(redisTemplate.hasKey("im:heartbeat:node-b")).thenReturn(false);
+        Cursor<String> members = cursorOf("7:d1");
+        when(setOperations.scan(eq("im:node-sessions:node-b"), any(ScanOptions.class))).thenReturn(members);
+
+        // When
+        directory.reapDeadNodes();
+
+        // Then - the node stays registered and nobody is marked offline
+        verify(redisTemplate).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        verify(redisTemplate, never()).convertAndSend(anyString(), anyString());
+        assertThat(directory.getStats()).containsEntry("nodesReaped", 0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cursor<String> cursorOf(String... values) {
+        Cursor<String> cursor = mock(Cursor.class);
+        Iterator<String> it = List.of(values).iterator();
+        when(cursor.hasNext()).thenAnswer(inv -> it.hasNext());
+        when(cursor.next()).thenAnswer(inv -> it.next());
+        return cursor;
+    }
+
+    @Test
+    @DisplayName("Should leave nodes with a live heartbeat alone")
+    @SuppressWarnings("unchecked")
+    void shouldNotReapLiveNode() {
+        // Given
+        when(setOperations.members("im:nodes")).thenReturn(Set.of("node-a", "node-b"));
+        when(redisTemplate.hasKey("im:heartbeat:node-b")).thenReturn(true);
+
+        // When
+        directory.reapDeadNodes();
+
+        // Then
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        verify(redisTemplate, never()).convertAndSend(anyString(), anyString());
+    }
+}
@@ -1,8 +1,7 @@
 package com.lumichat.im.session;
 
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelId;
+import io.netty.util.DefaultAttributeMap;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -31,31 +30,19 @@ class SessionManagerTest {
     @Mock
     private Channel channel3;
 
-    @Mock
-    private ChannelId channelId1;
-
-    @Mock
-    private ChannelId channelId2;
-
-    @Mock
-    private ChannelId channelId3;
-
     @BeforeEach
     void setUp() {
         sessionManager = new SessionManager();
 
-        // Setup channel mocks
-        lenient().when(channel1.id()).thenReturn(channelId1);
-        lenient().when(channelId1.asLongText()).thenReturn("channel-1-long");
-        lenient().when(channelId1.asShortText()).thenReturn("ch1");
-
-        lenient().when(channel2.id()).thenReturn(channelId2);
-        lenient().when(channelId2.asLongText()).thenReturn("channel-2-long");
-        lenient().when(channelId2.asShortText()).thenReturn("ch2");
+        // Setup channel mocks; sessions are stored in a channel attribute
+        stubAttributes(channel1);
+        stubAttributes(channel2);
+        stubAttributes(channel3);
+    }
 
-        lenient().when(channel3.id()).thenReturn(channelId3);
-        lenient().when(channelId3.asLongText()).thenReturn("channel-3-long");
-        lenient().when(channelId3.asShortText()).thenReturn("ch3");
+    private static void stubAttributes(Channel channel) {
+        DefaultAttributeMap attributes = new DefaultAttributeMap();
+        lenient().when(channel.attr(SessionManager.SESSION)).thenReturn(attributes.attr(SessionManager.SESSION));
     }
 
     @Nested
@@ -76,7 +63,6 @@ class SessionManagerTest {
             assertThat(session.getDeviceType()).isEqualTo("web");
             assertThat(session.getChannel()).isEqualTo(channel1);
             assertThat(session.getConnectedAt()).isNotNull();
-            assertThat(session.getLastActiveAt()).isNotNull();
         }
 
         @Test
@@ -202,6 +188,22 @@ class SessionManagerTest {
             assertThat(sessionManager.getOnlineUserCount()).isEqualTo(0);
         }
 
+        @Test
+        @DisplayName("Should keep the new session when a replaced channel of the same device disconnects")
+        void shouldKeepReconnectedDeviceSession() {
+            // Given - device-1 reconnects on a new channel before the old one closes
+            sessionManager.addSession(channel1, 1L, "device-1", "web");
+            sessionManager.addSession(channel2, 1L, "device-1", "web");
+
+            // When
+            sessionManager.removeSession(channel1);
+
+            // Then
+            assertThat(sessionManager.getSession(1L, "device-1").getChannel()).isEqualTo(channel2);
+            assertThat(sessionManager.getSessionsByUserId(1L)).hasSize(1);
+            assertThat(sessionManager.getSessionCount()).isEqualTo(1);
+        }
+
         @Test
         @DisplayName("Should handle removing non-existent session gracefully")
         void shouldHandleRemovingNonExistentSessionGracefully() {
@@ -294,38 +296,6 @@ class SessionManagerTest {
         }
     }
 
-    @Nested
-    @DisplayName("Update Last Active Tests")
-    class UpdateLastActiveTests {
-
-        @Test
-        @DisplayName("Should update last active timestamp")
-        void shouldUpdateLastActiveTimestamp() throws InterruptedException {
-            // Given
-            sessionManager.addSession(channel1, 1L, "device-1", "web");
-            UserSession session = sessionManager.getSessionByChannel(channel1);
-            var originalLastActive = session.getLastActiveAt();
-
-            // Wait a bit to ensure different timestamp
-            Thread.sleep(10);
-
-            // When
-            sessionManager.updateLastActive(channel1);
-
-            // Then
-            assertThat(session.getLastActiveAt()).isAfter(originalLastActive);
-        }
-
-        @Test
-        @DisplayName("Should handle updating non-existent channel gracefully")
-        void shouldHandleUpdatingNonExistentChannelGracefully() {
-            // When - Should not throw
-            sessionManager.updateLastActive(channel1);
-
-            // Then - Nothing to assert, just verifying no exception
-        }
-    }
-
     @Nested
     @DisplayName("Query Edge Cases Tests")
     class QueryEdgeCasesTests {
@@ -362,62 +332,6 @@ class SessionManagerTest {
         }
     }
 
-    @Nested
-    @DisplayName("Clean Inactive Sessions Tests")
-    class CleanInactiveSessionsTests {
-
-        @Test
-        @DisplayName("Should close inactive sessions")
-        void shouldCloseInactiveSessions() throws InterruptedException {
-            // Given
-            ChannelFuture channelFuture = mock(ChannelFuture.class);
-            when(channel1.close()).thenReturn(channelFuture);
-
-            sessionManager.addSession(channel1, 1L, "device-1", "web");
-
-            // Make session inactive by waiting and not updating lastActive
-            Thread.sleep(50);
-
-            // When - Clean sessions inactive for more than 20ms
-            sessionManager.cleanInactiveSessions(20);
-
-            // Then
-            verify(channel1).close();
-        }
-
-        @Test
-        @DisplayName("Should not close active sessions")
-        void shouldNotCloseActiveSessions() {
-            // Given
-            sessionManager.addSession(channel1, 1L, "device-1", "web");
-
-            // When - Clean sessions inactive for more than 1 hour (session is recent)
-            sessionManager.cleanInactiveSessions(3600000);
-
-            // Then
-            verify(channel1, never()).close();
-        }
-
-        @Test
-        @DisplayName("Should only close inactive sessions")
-        void shouldOnlyCloseInactiveSessions() throws InterruptedException {
-            // Given
-            ChannelFuture channelFuture = mock(ChannelFuture.class);
-            when(channel1.close()).thenReturn(channelFuture);
-
-            sessionManager.addSession(channel1, 1L, "device-1", "web");
-            Thread.sleep(50);
-            sessionManager.addSession(channel2, 2L, "device-2", "mobile"); // Added later
-
-            // When - Clean sessions inactive for more than 30ms
-            sessionManager.cleanInactiveSessions(30);
-
-            // Then - Only channel1 should be closed
-            verify(channel1).close();
-            verify(channel2, never()).close();
-        }
-    }
-
     @Nested
     @DisplayName("Thread Safety Tests")
     class ThreadSafetyTests {
@@ -432,10 +346,7 @@ class SessionManagerTest {
             for (int i = 0; i < threadCount; i++) {
                 final int userId = i;
                 final Channel mockChannel = mock(Channel.class);
-                final ChannelId mockChannelId = mock(ChannelId.class);
-                when(mockChannel.id()).thenReturn(mockChannelId);
-                when(mockChannelId.asLongText()).thenReturn("channel-" + userId);
-                when(mockChannelId.asShortText()).thenReturn("ch" + userId);
+                stubAttributes(mockChannel);
 
                 threads[i] = new Thread(() -> {
                     sessionManager.addSession(mockChannel, (long) userId, "device-" + userId, "web");